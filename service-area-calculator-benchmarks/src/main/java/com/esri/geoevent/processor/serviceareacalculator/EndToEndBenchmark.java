@@ -0,0 +1,133 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Events per second through the processor against a stub NAServer answering with a recorded reply after a fixed
+ * latency. Caching is off and every event has its own location, so every event is solved.
+ * <p>
+ * <code>sync</code> solves on the calling thread, <code>async</code> keeps several requests in flight and
+ * <code>batched</code> additionally groups events into multi-facility requests. Each invocation pushes a burst of
+ * events and waits until all of them have come out of the processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark
+{
+	private static final int			BURST	= 64;
+
+	@Param({ "sync", "async", "batched" })
+	public String									mode;
+
+	@Param({ "0", "20" })
+	public long										latencyMillis;
+
+	@Param({ "small", "detailed" })
+	public String									reply;
+
+	private StubNAServer					server;
+	private ServiceAreaCalculator	processor;
+	private GeoEventDefinition		definition;
+	private final Semaphore				completed	= new Semaphore(0);
+	private final AtomicLong			sequence	= new AtomicLong();
+	private final SpatialReference	sr				= SpatialReference.create(4326);
+
+	@Setup
+	public void setup() throws Exception
+	{
+		double[] breaks = { 5 };
+		int facilities = "batched".equals(mode) ? 16 : 1;
+		server = new StubNAServer("detailed".equals(reply) ? SolverReplies.detailed(facilities, breaks) : SolverReplies.small(facilities, breaks), latencyMillis);
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(ServiceAreaCalculatorDefinition.CACHE_SIZE_PROPERTY, 0);
+		if (!"sync".equals(mode))
+		{
+			properties.put(ServiceAreaCalculatorDefinition.ASYNC_PROPERTY, "true");
+			properties.put(ServiceAreaCalculatorDefinition.MAX_IN_FLIGHT_PROPERTY, 16);
+			properties.put(ServiceAreaCalculatorDefinition.PRESERVE_TRACK_ORDER_PROPERTY, "false");
+		}
+		if ("batched".equals(mode))
+		{
+			properties.put(ServiceAreaCalculatorDefinition.BATCH_SIZE_PROPERTY, 16);
+			properties.put(ServiceAreaCalculatorDefinition.BATCH_WINDOW_PROPERTY, 5);
+		}
+		processor = SdkStubs.createProcessor(server.getUrl(), properties, e -> completed.release());
+		definition = SdkStubs.definition();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		processor.shutdown();
+		server.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void burst() throws Exception
+	{
+		int pending = 0;
+		for (int i = 0; i < BURST; i++)
+		{
+			long n = sequence.incrementAndGet();
+			MapGeometry point = new MapGeometry(new Point(-117.19 + (n % 1000) * 0.0001, 34.05 + (n / 1000 % 1000) * 0.0001), sr);
+			if (processor.process(SdkStubs.geoEvent(definition, Long.toString(n % 500), point)) == null && !"sync".equals(mode))
+				pending++;
+		}
+		// events whose solve failed are never sent
+		if (!completed.tryAcquire(pending, 60, TimeUnit.SECONDS))
+			throw new IllegalStateException("Timed out waiting for the processor to send its results.");
+	}
+}
@@ -0,0 +1,84 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+
+/**
+ * Encoding of the solve request body. This replaces the JSON generation and Z removal the processor used to do before
+ * the facilities were written straight into the form body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FacilitiesEncodingBenchmark
+{
+	@Param({ "1", "50" })
+	public int									facilityCount;
+
+	private List<MapGeometry>	points;
+
+	@Setup
+	public void setup()
+	{
+		SpatialReference sr = SpatialReference.create(4326);
+		points = new ArrayList<MapGeometry>(facilityCount);
+		for (int i = 0; i < facilityCount; i++)
+			points.add(new MapGeometry(new Point(-117.19 + i * 0.001, 34.05 + i * 0.001, 350.0), sr));
+	}
+
+	@Benchmark
+	public byte[] encodeRequestBody()
+	{
+		FormEncodedBody body = FormEncodedBody.create();
+		body.add("f", "json");
+		body.addFacilities(points);
+		body.add("defaultBreaks", "5");
+		body.add("travelDirection", "esriNATravelDirectionFromFacility");
+		body.add("outputPolygons", "esriNAOutputPolygonSimplified");
+		return body.toBytes();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Cost of <code>process()</code> itself when the service area is already known: cache lookup, output field handling
+ * and, with an output definition name, creation of the new event. Events carry <code>extraFields</code> String fields
+ * besides TRACK_ID, GEOMETRY and SERVICE_AREA; an output field other than SERVICE_AREA is appended to the definition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessBenchmark
+{
+	@Param({ "", "ServiceAreas" })
+	public String									outputDefinitionName;
+
+	@Param({ "0", "80" })
+	public int										extraFields;
+
+	@Param({ SdkStubs.SERVICE_AREA_FIELD, "APPENDED_AREA" })
+	public String									outputField;
+
+	private StubNAServer					server;
+	private ServiceAreaCalculator	processor;
+	private GeoEventDefinition		definition;
+	private MapGeometry						point;
+	private Object[]							fields;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		server = new StubNAServer(SolverReplies.small(1, new double[] { 5 }), 0);
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("outputGEDName", outputDefinitionName);
+		properties.put("outputGeometryField", outputField);
+		properties.put(ServiceAreaCalculatorDefinition.CACHE_SIZE_PROPERTY, 1000);
+		processor = SdkStubs.createProcessor(server.getUrl(), properties, e -> {});
+		List<FieldDefinition> fieldDefinitions = new ArrayList<FieldDefinition>(SdkStubs.definition().getFieldDefinitions());
+		for (int i = 0; i < extraFields; i++)
+			fieldDefinitions.add(new DefaultFieldDefinition("FIELD_" + i, FieldType.String));
+		definition = SdkStubs.definition(UUID.randomUUID().toString(), fieldDefinitions);
+		point = new MapGeometry(new Point(-117.19, 34.05), SpatialReference.create(4326));
+		fields = new Object[fieldDefinitions.size()];
+		fields[0] = "1";
+		fields[1] = point;
+		for (int i = 3; i < fields.length; i++)
+			fields[i] = "value " + i;
+
+		// fill the cache so that the benchmark measures the processor, not the solver
+		processor.process(SdkStubs.geoEvent(definition, "warm", point));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		processor.shutdown();
+		server.close();
+	}
+
+	@Benchmark
+	public GeoEvent process() throws Exception
+	{
+		return processor.process(SdkStubs.geoEvent(definition, fields.clone()));
+	}
+}
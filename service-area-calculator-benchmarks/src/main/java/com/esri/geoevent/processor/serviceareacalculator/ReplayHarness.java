@@ -0,0 +1,366 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Replays recorded point events through {@link ServiceAreaCalculator#process(GeoEvent)} outside of GeoEvent Server and
+ * reports throughput, latency percentiles and allocation rate. The processor runs against the SDK stand-ins of
+ * {@link SdkStubs} and solves against a {@link StubNAServer}, unless the local solver backend is chosen.
+ * <p>
+ * Events are read from CSV lines <code>trackId,timestamp,x,y[,wkid]</code> or from JSON lines with the same keys;
+ * timestamps are epoch milliseconds or ISO-8601 instants. Usage:
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.esri.geoevent.processor.serviceareacalculator.ReplayHarness events.csv
+ *     [--rate eventsPerSecond | --speed factor] [--repeat n] [--warmup n] [--latency ms] [--reply small|detailed]
+ *     [--property name=value]...
+ * </pre>
+ *
+ * Without <code>--rate</code> or <code>--speed</code> events are sent as fast as possible. <code>--speed</code>
+ * keeps the recorded spacing of the timestamps, divided by the factor. Processor settings are passed as properties,
+ * for instance <code>--property solverBackend=Local --property localGraphFile=roads.csv</code> to solve locally. When paced, latency is measured from the time
+ * an event was due rather than from when it was actually sent, so that a stalled processor shows in the percentiles.
+ * <code>--warmup</code> first sends that many events unpaced and unmeasured. The allocation rate covers the threads
+ * alive at the end of the run.
+ */
+public class ReplayHarness
+{
+	private static final JsonFactory	JSON_FACTORY	= new JsonFactory();
+	private static final long					DRAIN_TIMEOUT_MILLIS	= 60000;
+	private static final long					QUIET_MILLIS					= 2000;
+
+	private final Histogram						latencies		= new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(10), 3);
+	// the input geometry of each event still inside the processor, with the time it was due
+	private final Map<MapGeometry, Long>	pending			= Collections.synchronizedMap(new IdentityHashMap<MapGeometry, Long>());
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length == 0)
+		{
+			System.err.println("Usage: ReplayHarness <events.csv|events.jsonl> [--rate eventsPerSecond | --speed factor] [--repeat n] [--warmup n] [--latency ms] [--reply small|detailed] [--property name=value]...");
+			System.exit(1);
+		}
+
+		double rate = 0;
+		double speed = 0;
+		int repeat = 1;
+		int warmup = 0;
+		long latencyMillis = 0;
+		String reply = "small";
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for (int i = 1; i < args.length; i++)
+		{
+			switch (args[i])
+			{
+				case "--rate":
+					rate = Double.parseDouble(args[++i]);
+					break;
+				case "--speed":
+					speed = Double.parseDouble(args[++i]);
+					break;
+				case "--repeat":
+					repeat = Integer.parseInt(args[++i]);
+					break;
+				case "--warmup":
+					warmup = Integer.parseInt(args[++i]);
+					break;
+				case "--latency":
+					latencyMillis = Long.parseLong(args[++i]);
+					break;
+				case "--reply":
+					reply = args[++i];
+					break;
+				case "--property":
+					String[] property = args[++i].split("=", 2);
+					properties.put(property[0], (property.length > 1) ? property[1] : "");
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		List<RecordedEvent> events = read(new File(args[0]));
+		if (events.isEmpty())
+			throw new IllegalArgumentException("No events in " + args[0]);
+		new ReplayHarness().run(events, rate, speed, repeat, warmup, latencyMillis, reply, properties);
+	}
+
+	private void run(List<RecordedEvent> events, double rate, double speed, int repeat, int warmup, long latencyMillis, String reply, Map<String, Object> properties) throws Exception
+	{
+		double[] breaks = { 5 };
+		int facilities = Math.max(1, Integer.parseInt(String.valueOf(properties.getOrDefault(ServiceAreaCalculatorDefinition.BATCH_SIZE_PROPERTY, "1"))));
+		byte[] recordedReply = "detailed".equals(reply) ? SolverReplies.detailed(facilities, breaks) : SolverReplies.small(facilities, breaks);
+
+		try (StubNAServer server = new StubNAServer(recordedReply, latencyMillis))
+		{
+			ServiceAreaCalculator processor = SdkStubs.createProcessor(server.getUrl(), properties, this::completed);
+			GeoEventDefinition definition = SdkStubs.definition();
+			long firstTimestamp = events.get(0).timestamp;
+			long recordedSpan = events.get(events.size() - 1).timestamp - firstTimestamp + 1;
+
+			// warm up the JIT, the connection pool and the caches unpaced, then start measuring from scratch
+			for (int i = 0; i < warmup; i++)
+			{
+				RecordedEvent event = events.get(i % events.size());
+				MapGeometry point = new MapGeometry(new Point(event.x, event.y), event.sr);
+				pending.put(point, System.nanoTime());
+				GeoEvent result = processor.process(SdkStubs.geoEvent(definition, event.trackId, point));
+				if (result != null)
+					completed(result);
+			}
+			awaitCompletion();
+			pending.clear();
+			latencies.reset();
+
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			long allocatedBefore = allocatedBytes(threads);
+			long start = System.nanoTime();
+			long sent = 0;
+			for (int round = 0; round < repeat; round++)
+			{
+				for (RecordedEvent event : events)
+				{
+					long due;
+					if (rate > 0)
+						due = start + (long) (sent * 1e9 / rate);
+					else if (speed > 0)
+						due = start + (long) (TimeUnit.MILLISECONDS.toNanos(round * recordedSpan + event.timestamp - firstTimestamp) / speed);
+					else
+						due = System.nanoTime();
+					while (System.nanoTime() < due)
+						LockSupport.parkNanos(due - System.nanoTime());
+
+					// a new geometry per event identifies it when it comes out of the processor
+					MapGeometry point = new MapGeometry(new Point(event.x, event.y), event.sr);
+					pending.put(point, due);
+					GeoEvent result = processor.process(SdkStubs.geoEvent(definition, event.trackId, point));
+					if (result != null)
+						completed(result);
+					sent++;
+				}
+			}
+			long sendEnd = System.nanoTime();
+
+			long end = awaitCompletion();
+			long allocated = allocatedBytes(threads) - allocatedBefore;
+			long dropped = pending.size();
+			processor.shutdown();
+
+			double sendSeconds = (sendEnd - start) / 1e9;
+			double seconds = (end - start) / 1e9;
+			System.out.printf(Locale.ROOT, "Events sent:        %d in %.2f s (%.1f events/s offered)%n", sent, sendSeconds, sent / sendSeconds);
+			System.out.printf(Locale.ROOT, "Events completed:   %d in %.2f s (%.1f events/s)%n", latencies.getTotalCount(), seconds, latencies.getTotalCount() / seconds);
+			System.out.printf(Locale.ROOT, "Events not sent on: %d%n", dropped);
+			System.out.printf(Locale.ROOT, "Latency (ms):       p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n", millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)), millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+			if (allocated >= 0)
+				System.out.printf(Locale.ROOT, "Allocation:         %.1f MB/s, %.0f bytes/event%n", allocated / seconds / (1024 * 1024), (double) allocated / Math.max(1, sent));
+			else
+				System.out.println("Allocation:         not available on this JVM");
+		}
+	}
+
+	/**
+	 * Waits for the asynchronous results still coming in and returns the time the last one came out. Events the
+	 * processor filtered or failed never come out, so waiting stops once nothing has come out for a while.
+	 */
+	private long awaitCompletion() throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+		long end = System.nanoTime();
+		int remaining = pending.size();
+		while (remaining > 0 && System.currentTimeMillis() < deadline && System.nanoTime() - end < TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS))
+		{
+			Thread.sleep(10);
+			if (pending.size() != remaining)
+			{
+				remaining = pending.size();
+				end = System.nanoTime();
+			}
+		}
+		return end;
+	}
+
+	private void completed(GeoEvent geoEvent)
+	{
+		Object geometry = geoEvent.getField(SdkStubs.GEOMETRY_FIELD);
+		Long due = (geometry instanceof MapGeometry) ? pending.remove(geometry) : null;
+		if (due != null)
+			latencies.recordValue(Math.max(0, System.nanoTime() - due));
+	}
+
+	private static double millis(long nanos)
+	{
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the live threads, or -1 if the JVM does not measure it.
+	 */
+	private static long allocatedBytes(ThreadMXBean threads)
+	{
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled())
+			return -1;
+		long total = 0;
+		for (long bytes : allocation.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			total += Math.max(0, bytes);
+		return total;
+	}
+
+	static List<RecordedEvent> read(File file) throws IOException
+	{
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+				RecordedEvent event = line.startsWith("{") ? parseJson(line) : parseCsv(line);
+				if (event != null)
+					events.add(event);
+			}
+		}
+		return events;
+	}
+
+	private static RecordedEvent parseCsv(String line)
+	{
+		String[] columns = line.split(",");
+		if (columns.length < 4)
+			return null;
+		try
+		{
+			int wkid = (columns.length > 4) ? Integer.parseInt(columns[4].trim()) : 4326;
+			return new RecordedEvent(columns[0].trim(), parseTimestamp(columns[1].trim()), Double.parseDouble(columns[2].trim()), Double.parseDouble(columns[3].trim()), wkid);
+		}
+		catch (RuntimeException e)
+		{
+			// header or malformed row
+			return null;
+		}
+	}
+
+	private static RecordedEvent parseJson(String line) throws IOException
+	{
+		String trackId = null;
+		long timestamp = 0;
+		double x = Double.NaN, y = Double.NaN;
+		int wkid = 4326;
+		try (JsonParser parser = JSON_FACTORY.createParser(line))
+		{
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field)
+				{
+					case "trackId":
+						trackId = parser.getValueAsString();
+						break;
+					case "timestamp":
+						timestamp = parser.getCurrentToken().isNumeric() ? parser.getLongValue() : parseTimestamp(parser.getText());
+						break;
+					case "x":
+						x = parser.getValueAsDouble();
+						break;
+					case "y":
+						y = parser.getValueAsDouble();
+						break;
+					case "wkid":
+						wkid = parser.getValueAsInt();
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+		}
+		return (Double.isNaN(x) || Double.isNaN(y)) ? null : new RecordedEvent(trackId, timestamp, x, y, wkid);
+	}
+
+	private static long parseTimestamp(String value)
+	{
+		if (value.isEmpty())
+			return 0;
+		if (Character.isDigit(value.charAt(value.length() - 1)) && value.indexOf('-') < 0 && value.indexOf(':') < 0)
+			return Long.parseLong(value);
+		return Instant.parse(value).toEpochMilli();
+	}
+
+	static class RecordedEvent
+	{
+		final String						trackId;
+		final long							timestamp;
+		final double						x;
+		final double						y;
+		final SpatialReference	sr;
+
+		RecordedEvent(String trackId, long timestamp, double x, double y, int wkid)
+		{
+			this.trackId = trackId;
+			this.timestamp = timestamp;
+			this.x = x;
+			this.y = y;
+			this.sr = SpatialReference.create(wkid);
+		}
+	}
+}
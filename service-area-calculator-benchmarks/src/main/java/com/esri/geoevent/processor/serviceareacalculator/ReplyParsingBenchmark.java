@@ -0,0 +1,77 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.core.geometry.MapGeometry;
+
+/**
+ * Parsing of solveServiceArea replies into polygons, which is what the processor's reply handling delegates to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplyParsingBenchmark
+{
+	private static final double[]	BREAKS	= { 5 };
+
+	@Param({ "small", "detailed" })
+	public String									reply;
+
+	@Param({ "1", "10" })
+	public int										facilityCount;
+
+	private byte[]								bytes;
+
+	@Setup
+	public void setup()
+	{
+		bytes = "detailed".equals(reply) ? SolverReplies.detailed(facilityCount, BREAKS) : SolverReplies.small(facilityCount, BREAKS);
+	}
+
+	@Benchmark
+	public MapGeometry[][] parseReply() throws IOException
+	{
+		return SolverReplyParser.parse(new ByteArrayInputStream(bytes), facilityCount, BREAKS);
+	}
+}
@@ -0,0 +1,385 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.core.geoevent.GeoEventPropertyName;
+import com.esri.ges.core.http.GeoEventHttpClient;
+import com.esri.ges.core.http.GeoEventHttpClientService;
+import com.esri.ges.core.property.Property;
+import com.esri.ges.manager.datastore.agsconnection.ArcGISServerConnection;
+import com.esri.ges.manager.datastore.agsconnection.ArcGISServerConnectionManager;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+import com.esri.ges.messaging.EventDestination;
+import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.Messaging;
+
+/**
+ * Minimal in-memory stand-ins for the GeoEvent Server services the processor depends on, so that it can be created
+ * and driven outside of the server. The SDK interfaces are implemented with dynamic proxies; methods the processor
+ * does not use return <code>null</code>, <code>false</code> or 0.
+ */
+public class SdkStubs
+{
+	public static final String	TRACK_ID_FIELD				= "TRACK_ID";
+	public static final String	GEOMETRY_FIELD				= "GEOMETRY";
+	public static final String	SERVICE_AREA_FIELD		= "SERVICE_AREA";
+	public static final String	CONNECTION_NAME				= "stub";
+
+	private SdkStubs()
+	{
+	}
+
+	/**
+	 * Creates a processor writing to an existing SERVICE_AREA field, solving against the given NAServer, with the
+	 * given property values overriding the defaults. Events the processor sends asynchronously are handed to
+	 * <code>sent</code>.
+	 */
+	public static ServiceAreaCalculator createProcessor(URL naServerUrl, Map<String, Object> properties, Consumer<GeoEvent> sent) throws Exception
+	{
+		ServiceAreaCalculatorDefinition definition = new ServiceAreaCalculatorDefinition();
+		GeoEventDefinitionManager definitionManager = new DefinitionManager().proxy();
+		ServiceAreaCalculator processor = new ServiceAreaCalculator(definition, httpService(), messaging(sent), definitionManager, connectionManager(naServerUrl));
+
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("inputGeometryField", GEOMETRY_FIELD);
+		values.put("replaceGeometry", "false");
+		values.put("outputGeometryField", SERVICE_AREA_FIELD);
+		values.put("outputGEDName", "");
+		values.put(ServiceAreaCalculatorDefinition.NA_CONNECTION_PROPERTY, CONNECTION_NAME);
+		values.put(ServiceAreaCalculatorDefinition.NA_PATH_PROPERTY, "rest/services/Network/USA/NAServer/Service%20Area/solveServiceArea");
+		values.put(ServiceAreaCalculatorDefinition.DRIVE_TIME_PROPERTY, "5");
+		values.put(ServiceAreaCalculatorDefinition.OUTPUT_POLYGON_TYPE_PROPERTY, "esriNAOutputPolygonSimplified");
+		values.putAll(properties);
+		for (Map.Entry<String, Object> value : values.entrySet())
+			processor.setProperty(new Property(definition.getPropertyDefinitions().get(value.getKey()), value.getValue()));
+
+		processor.setId("benchmark-" + UUID.randomUUID());
+		processor.afterPropertiesSet();
+		return processor;
+	}
+
+	/**
+	 * Returns the definition TRACK_ID, GEOMETRY, SERVICE_AREA.
+	 */
+	public static GeoEventDefinition definition() throws Exception
+	{
+		return definition(UUID.randomUUID().toString(), Arrays.<FieldDefinition> asList(new DefaultFieldDefinition(TRACK_ID_FIELD, FieldType.String), new DefaultFieldDefinition(GEOMETRY_FIELD, FieldType.Geometry), new DefaultFieldDefinition(SERVICE_AREA_FIELD, FieldType.Geometry)));
+	}
+
+	public static GeoEvent geoEvent(GeoEventDefinition definition, String trackId, MapGeometry point)
+	{
+		Object[] fields = new Object[definition.getFieldDefinitions().size()];
+		fields[0] = trackId;
+		fields[1] = point;
+		return geoEvent(definition, fields);
+	}
+
+	static GeoEvent geoEvent(GeoEventDefinition definition, Object[] fields)
+	{
+		Map<GeoEventPropertyName, Object> properties = new EnumMap<GeoEventPropertyName, Object>(GeoEventPropertyName.class);
+		InvocationHandler handler = (proxy, method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "getField":
+						return fields[(args[0] instanceof Integer) ? (Integer) args[0] : definition.getIndexOf((String) args[0])];
+					case "setField":
+						int index = (args[0] instanceof Integer) ? (Integer) args[0] : definition.getIndexOf((String) args[0]);
+						if (index < 0)
+							throw new IllegalArgumentException("No field " + args[0]);
+						fields[index] = args[1];
+						return null;
+					case "getGeoEventDefinition":
+						return definition;
+					case "getTrackId":
+						return fields[0];
+					case "getGeometry":
+						return fields[1];
+					case "getAllFields":
+						return fields;
+					case "getProperty":
+						return properties.get(args[0]);
+					case "setProperty":
+						properties.put((GeoEventPropertyName) args[0], args[1]);
+						return null;
+					case "hasProperty":
+						return properties.containsKey(args[0]);
+					case "getProperties":
+						return properties.entrySet();
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			};
+		return proxy(GeoEvent.class, handler);
+	}
+
+	static GeoEventDefinition definition(String guid, List<FieldDefinition> fieldDefinitions)
+	{
+		String[] name = new String[1];
+		String[] owner = new String[1];
+		InvocationHandler handler = (proxy, method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "getGuid":
+						return guid;
+					case "getName":
+						return name[0];
+					case "setName":
+						name[0] = (String) args[0];
+						return null;
+					case "getOwner":
+						return owner[0];
+					case "setOwner":
+						owner[0] = (String) args[0];
+						return null;
+					case "getFieldDefinitions":
+						return fieldDefinitions;
+					case "getFieldDefinition":
+						for (FieldDefinition fd : fieldDefinitions)
+						{
+							if (fd.getName().equals(args[0]))
+								return fd;
+						}
+						return null;
+					case "getIndexOf":
+						for (int i = 0; i < fieldDefinitions.size(); i++)
+						{
+							if (fieldDefinitions.get(i).getName().equals(args[0]))
+								return i;
+						}
+						return -1;
+					case "augment":
+						@SuppressWarnings("unchecked")
+						List<FieldDefinition> augmented = new ArrayList<FieldDefinition>(fieldDefinitions);
+						augmented.addAll((List<FieldDefinition>) args[0]);
+						return definition(UUID.randomUUID().toString(), augmented);
+					case "clone":
+						return definition(UUID.randomUUID().toString(), new ArrayList<FieldDefinition>(fieldDefinitions));
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			};
+		return proxy(GeoEventDefinition.class, handler);
+	}
+
+	/**
+	 * Returns an HTTP client service whose clients send requests with a plain pooled Apache HTTP client.
+	 */
+	static GeoEventHttpClientService httpService()
+	{
+		return proxy(GeoEventHttpClientService.class, (proxy, method, args) -> "createNewClient".equals(method.getName()) ? httpClient() : defaultValue(method.getReturnType()));
+	}
+
+	static GeoEventHttpClient httpClient()
+	{
+		CloseableHttpClient client = HttpClients.custom().setMaxConnPerRoute(100).setMaxConnTotal(100).build();
+		return proxy(GeoEventHttpClient.class, (proxy, method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "execute":
+						HttpRequestBase request = (HttpRequestBase) args[0];
+						if (args.length > 1)
+						{
+							int timeout = (Integer) args[1];
+							request.setConfig(RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).build());
+						}
+						return client.execute(request);
+					case "close":
+						client.close();
+						return null;
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			});
+	}
+
+	static Messaging messaging(Consumer<GeoEvent> sent)
+	{
+		return proxy(Messaging.class, (proxy, method, args) ->
+			{
+				if ("createGeoEventCreator".equals(method.getName()))
+					return geoEventCreator();
+				if ("createGeoEventProducer".equals(method.getName()))
+					return producer((EventDestination) args[0], sent);
+				return defaultValue(method.getReturnType());
+			});
+	}
+
+	static GeoEventCreator geoEventCreator()
+	{
+		return proxy(GeoEventCreator.class, (proxy, method, args) ->
+			{
+				GeoEventDefinition definition = DefinitionManager.REGISTERED.get(args[0]);
+				Object[] fields = new Object[definition.getFieldDefinitions().size()];
+				if (args.length > 1)
+					flatten((Object[]) args[1], fields, 0);
+				return geoEvent(definition, fields);
+			});
+	}
+
+	/**
+	 * Copies nested field arrays, as passed to {@link GeoEventCreator}, into a flat array.
+	 */
+	private static int flatten(Object[] source, Object[] target, int position)
+	{
+		for (Object value : source)
+		{
+			if (value instanceof Object[])
+				position = flatten((Object[]) value, target, position);
+			else if (position < target.length)
+				target[position++] = value;
+		}
+		return position;
+	}
+
+	static GeoEventProducer producer(EventDestination destination, Consumer<GeoEvent> sent)
+	{
+		return proxy(GeoEventProducer.class, (proxy, method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "send":
+						sent.accept((GeoEvent) args[0]);
+						return null;
+					case "getEventDestination":
+						return destination;
+					case "isConnected":
+						return true;
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			});
+	}
+
+	static ArcGISServerConnectionManager connectionManager(URL url)
+	{
+		ArcGISServerConnection connection = proxy(ArcGISServerConnection.class, (proxy, method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "getUrl":
+						return url;
+					case "getReferer":
+						return "http://localhost/benchmark";
+					case "getName":
+						return CONNECTION_NAME;
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			});
+		return proxy(ArcGISServerConnectionManager.class, (proxy, method, args) -> "getArcGISServerConnection".equals(method.getName()) ? connection : defaultValue(method.getReturnType()));
+	}
+
+	/**
+	 * Keeps the temporary definitions the processor registers, so that created events can be resolved by GUID.
+	 */
+	static class DefinitionManager
+	{
+		static final Map<String, GeoEventDefinition>	REGISTERED	= new ConcurrentHashMap<String, GeoEventDefinition>();
+
+		GeoEventDefinitionManager proxy()
+		{
+			return SdkStubs.proxy(GeoEventDefinitionManager.class, (proxy, method, args) ->
+				{
+					switch (method.getName())
+					{
+						case "getGeoEventDefinition":
+							return REGISTERED.get(args[0]);
+						case "addTemporaryGeoEventDefinition":
+							GeoEventDefinition definition = (GeoEventDefinition) args[0];
+							REGISTERED.put(definition.getGuid(), definition);
+							return null;
+						case "deleteGeoEventDefinition":
+							REGISTERED.remove(args[0]);
+							return null;
+						default:
+							return defaultValue(method.getReturnType());
+					}
+				});
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T proxy(Class<T> type, InvocationHandler handler)
+	{
+		InvocationHandler withObjectMethods = (proxy, method, args) ->
+			{
+				if (method.getDeclaringClass() == Object.class)
+				{
+					switch (method.getName())
+					{
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+					}
+				}
+				return handler.invoke(proxy, method, args);
+			};
+		return (T) Proxy.newProxyInstance(SdkStubs.class.getClassLoader(), new Class<?>[] { type }, withObjectMethods);
+	}
+
+	private static Object defaultValue(Class<?> type)
+	{
+		if (type == boolean.class)
+			return false;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		if (type == double.class)
+			return 0.0;
+		return null;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds solveServiceArea replies shaped like the ones NAServer returns: one saPolygons feature per facility and
+ * break, with rings approximating a disk.
+ */
+public class SolverReplies
+{
+	private SolverReplies()
+	{
+	}
+
+	/**
+	 * A generalized polygon of a few dozen vertices, as returned for simplified output polygons.
+	 */
+	public static byte[] small(int facilityCount, double[] breaks)
+	{
+		return reply(facilityCount, breaks, 1, 40);
+	}
+
+	/**
+	 * A detailed polygon with holes and thousands of vertices, as returned for detailed output polygons.
+	 */
+	public static byte[] detailed(int facilityCount, double[] breaks)
+	{
+		return reply(facilityCount, breaks, 4, 5000);
+	}
+
+	public static byte[] reply(int facilityCount, double[] breaks, int ringCount, int verticesPerRing)
+	{
+		StringBuilder sb = new StringBuilder(64 + facilityCount * breaks.length * ringCount * verticesPerRing * 40);
+		sb.append("{\"messages\":[],\"saPolygons\":{\"fieldAliases\":{\"ObjectID\":\"ObjectID\",\"FacilityID\":\"FacilityID\",\"Name\":\"Name\",\"FromBreak\":\"FromBreak\",\"ToBreak\":\"ToBreak\"},");
+		sb.append("\"geometryType\":\"esriGeometryPolygon\",\"spatialReference\":{\"wkid\":4326,\"latestWkid\":4326},\"features\":[");
+		int objectId = 1;
+		for (int facility = 1; facility <= facilityCount; facility++)
+		{
+			for (int b = 0; b < breaks.length; b++)
+			{
+				if (objectId > 1)
+					sb.append(',');
+				sb.append("{\"attributes\":{\"ObjectID\":").append(objectId++);
+				sb.append(",\"FacilityID\":").append(facility);
+				sb.append(",\"Name\":\"").append(facility).append(" : 0 - ").append(breaks[b]).append('"');
+				sb.append(",\"FromBreak\":0,\"ToBreak\":").append(breaks[b]).append("},\"geometry\":{\"rings\":[");
+				double radius = 0.01 * (b + 1);
+				for (int ring = 0; ring < ringCount; ring++)
+				{
+					if (ring > 0)
+						sb.append(',');
+					// the first ring is the outer boundary, the others are small holes inside it
+					double centerX = -117.19 + facility * 0.05 + ((ring == 0) ? 0 : radius * 0.5 * Math.cos(ring));
+					double centerY = 34.05 + ((ring == 0) ? 0 : radius * 0.5 * Math.sin(ring));
+					double ringRadius = (ring == 0) ? radius : radius * 0.1;
+					appendRing(sb, centerX, centerY, ringRadius, verticesPerRing, ring == 0);
+				}
+				sb.append("]}}");
+			}
+		}
+		sb.append("]}}");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void appendRing(StringBuilder sb, double centerX, double centerY, double radius, int vertexCount, boolean clockwise)
+	{
+		sb.append('[');
+		for (int i = 0; i <= vertexCount; i++)
+		{
+			double angle = 2 * Math.PI * (i % vertexCount) / vertexCount * (clockwise ? -1 : 1);
+			// a little noise, like a network derived boundary
+			double r = radius * (1 + 0.05 * Math.sin(i * 7.0));
+			if (i > 0)
+				sb.append(',');
+			sb.append('[').append(centerX + r * Math.cos(angle)).append(',').append(centerY + r * Math.sin(angle)).append(']');
+		}
+		sb.append(']');
+	}
+}
@@ -0,0 +1,108 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server standing in for NAServer. Every request is answered with the same recorded solveServiceArea
+ * reply after a fixed latency.
+ */
+public class StubNAServer implements AutoCloseable
+{
+	private final HttpServer			server;
+	private final ExecutorService	executor;
+	private final byte[]					reply;
+	private final long						latencyMillis;
+
+	static
+	{
+		// without TCP_NODELAY small replies wait for the client's delayed ACK, adding about 40 ms to every request
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	public StubNAServer(byte[] reply, long latencyMillis) throws IOException
+	{
+		this.reply = reply;
+		this.latencyMillis = latencyMillis;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * Returns the base URL of the server, to be used as the ArcGIS Server connection URL.
+	 */
+	public URL getUrl() throws IOException
+	{
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		try (InputStream in = exchange.getRequestBody())
+		{
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) >= 0)
+				;
+		}
+		if (latencyMillis > 0)
+		{
+			try
+			{
+				Thread.sleep(latencyMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+		exchange.sendResponseHeaders(200, reply.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(reply);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,420 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.OperatorExportToESRIShape;
+import com.esri.core.geometry.OperatorImportFromESRIShape;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Service areas solved ahead of time for fixed locations, indexed by the grid cell of the location and persisted in a
+ * memory-mapped file so that they survive restarts.
+ * <p>
+ * The file holds a header (magic, fingerprint of the solve settings, wkid, cell size, break count, entry count)
+ * followed by one entry per cell: column, row and, for every break, the length of the polygon in Esri shape format
+ * (-1 when there is none) followed by its bytes. A file written with other solve settings is ignored.
+ * <p>
+ * Newly solved entries are appended behind the mapped ones and the entry count is updated last, so the file is never
+ * replaced or truncated while it is mapped (which Windows does not allow) and an interrupted write leaves the
+ * previous entries intact. A damaged file is read up to the damage and the rest is solved again.
+ */
+public class AreaTileStore
+{
+	private static final BundleLogger	LOGGER	= BundleLoggerFactory.getLogger(AreaTileStore.class);
+	private static final int					MAGIC		= 0x53415431;
+	private static final int					MAX_FINGERPRINT_LENGTH	= 4096;
+
+	private final File								file;
+	private final String							fingerprint;
+	private final int									wkid;
+	private final double							cellSize;
+	private final int									breakCount;
+	private final SpatialReference		spatialReference;
+	private final Map<Long, MapGeometry[]>	added	= new ConcurrentHashMap<Long, MapGeometry[]>();
+	private final ExecutorService			filler;
+	private volatile Snapshot					snapshot	= Snapshot.EMPTY;
+
+	public AreaTileStore(File file, String fingerprint, int wkid, double cellSize, int breakCount)
+	{
+		this.file = file;
+		this.fingerprint = fingerprint;
+		this.wkid = wkid;
+		this.cellSize = cellSize;
+		this.breakCount = breakCount;
+		this.spatialReference = SpatialReference.create(wkid);
+		this.filler = Executors.newSingleThreadExecutor(new NamedThreadFactory("ServiceAreaTileStore-" + file.getName()));
+	}
+
+	/**
+	 * Maps the store file, if there is one written with the same settings, and returns the number of stored cells.
+	 */
+	public synchronized int open() throws IOException
+	{
+		snapshot = map();
+		return snapshot.offsets.size();
+	}
+
+	/**
+	 * Returns the stored areas of the cell holding the point, or <code>null</code>.
+	 */
+	public MapGeometry[] get(MapGeometry point)
+	{
+		if (!(point.getGeometry() instanceof Point) || point.getSpatialReference() == null || point.getSpatialReference().getID() != wkid)
+			return null;
+		Point pt = (Point) point.getGeometry();
+		long key = cellKey(pt.getX(), pt.getY());
+
+		MapGeometry[] areas = added.get(key);
+		if (areas != null)
+			return areas;
+		Snapshot current = snapshot;
+		Integer offset = current.offsets.get(key);
+		if (offset == null)
+			return null;
+		try
+		{
+			return read(current.buffer, offset);
+		}
+		catch (RuntimeException e)
+		{
+			// a polygon damaged on disk is solved again rather than failing the event
+			return null;
+		}
+	}
+
+	/**
+	 * Solves, in the background, every point whose cell is not stored yet and persists the store once done.
+	 */
+	public void fill(List<MapGeometry> points, Function<MapGeometry, MapGeometry[]> solver)
+	{
+		filler.execute(() ->
+			{
+				for (MapGeometry point : points)
+				{
+					if (Thread.currentThread().isInterrupted())
+						break;
+					if (get(point) != null)
+						continue;
+					MapGeometry[] areas = solver.apply(point);
+					if (isComplete(areas))
+					{
+						Point pt = (Point) point.getGeometry();
+						added.put(cellKey(pt.getX(), pt.getY()), areas);
+					}
+				}
+				try
+				{
+					persist();
+					LOGGER.info("SERVICE_AREA_TILE_STORE_FILLED", file.getPath(), size());
+				}
+				catch (IOException e)
+				{
+					LOGGER.error("SERVICE_AREA_TILE_STORE_ERROR", file.getPath(), e.getMessage());
+					LOGGER.info(e.getMessage(), e);
+				}
+			});
+	}
+
+	/**
+	 * Stops the background fill and writes the areas solved so far.
+	 */
+	public void close() throws IOException
+	{
+		filler.shutdownNow();
+		try
+		{
+			filler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		persist();
+		snapshot = Snapshot.EMPTY;
+	}
+
+	public int size()
+	{
+		return snapshot.offsets.size() + added.size();
+	}
+
+	/**
+	 * Appends the newly solved entries to the file, then maps it again. A file that is missing, unreadable or written
+	 * with other settings is written again from the start.
+	 */
+	private synchronized void persist() throws IOException
+	{
+		if (added.isEmpty())
+			return;
+
+		Snapshot current = snapshot;
+		Map<Long, MapGeometry[]> pending = new HashMap<Long, MapGeometry[]>(added);
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel())
+		{
+			int count;
+			long countOffset;
+			if (current.countOffset > 0)
+			{
+				count = current.offsets.size();
+				countOffset = current.countOffset;
+				channel.position(current.end);
+			}
+			else
+			{
+				// overwritten rather than truncated, as the file may still be mapped; the count hides what is left behind
+				count = 0;
+				countOffset = writeHeader(channel);
+			}
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			for (Map.Entry<Long, MapGeometry[]> entry : pending.entrySet())
+			{
+				out.writeInt((int) (entry.getKey() >> 32));
+				out.writeInt((int) (long) entry.getKey());
+				for (MapGeometry area : entry.getValue())
+				{
+					if (area == null)
+					{
+						out.writeInt(-1);
+						continue;
+					}
+					ByteBuffer shape = OperatorExportToESRIShape.local().execute(0, area.getGeometry());
+					byte[] bytes = new byte[shape.remaining()];
+					shape.get(bytes);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+			out.flush();
+			channel.force(false);
+
+			// the new entries only count once they are all on disk
+			ByteBuffer countBytes = ByteBuffer.allocate(4);
+			countBytes.putInt(0, count + pending.size());
+			channel.write(countBytes, countOffset);
+			channel.force(false);
+		}
+
+		snapshot = map();
+		added.keySet().removeAll(pending.keySet());
+	}
+
+	/**
+	 * Writes the header with an entry count of 0 and returns the position of the count.
+	 */
+	private long writeHeader(FileChannel channel) throws IOException
+	{
+		byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(28 + fingerprintBytes.length);
+		header.putInt(MAGIC);
+		header.putInt(fingerprintBytes.length);
+		header.put(fingerprintBytes);
+		header.putInt(wkid);
+		header.putDouble(cellSize);
+		header.putInt(breakCount);
+		long countOffset = header.position();
+		header.putInt(0);
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header);
+		return countOffset;
+	}
+
+	/**
+	 * Maps the store file and indexes its entries. The header is read before the file is mapped, so that a file
+	 * written with other settings is never mapped and can be rewritten. Entries are checked against the size of the
+	 * file; the index stops at the first damaged entry.
+	 */
+	private Snapshot map() throws IOException
+	{
+		if (!file.exists())
+			return Snapshot.EMPTY;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			long size = channel.size();
+			ByteBuffer start = ByteBuffer.allocate(8);
+			if (size > Integer.MAX_VALUE || channel.read(start, 0) < 8 || start.getInt(0) != MAGIC)
+			{
+				LOGGER.warn("SERVICE_AREA_TILE_STORE_INVALID", file.getPath());
+				return Snapshot.EMPTY;
+			}
+			int fingerprintLength = start.getInt(4);
+			if (fingerprintLength < 0 || fingerprintLength > MAX_FINGERPRINT_LENGTH || 28L + fingerprintLength > size)
+			{
+				LOGGER.warn("SERVICE_AREA_TILE_STORE_INVALID", file.getPath());
+				return Snapshot.EMPTY;
+			}
+			ByteBuffer header = ByteBuffer.allocate(20 + fingerprintLength);
+			channel.read(header, 8);
+			header.flip();
+			byte[] fingerprintBytes = new byte[fingerprintLength];
+			header.get(fingerprintBytes);
+			if (!fingerprint.equals(new String(fingerprintBytes, StandardCharsets.UTF_8)) || header.getInt() != wkid || header.getDouble() != cellSize || header.getInt() != breakCount)
+				return Snapshot.EMPTY;
+			int countOffset = 8 + header.position();
+			int count = header.getInt();
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.position(countOffset + 4);
+			Map<Long, Integer> offsets = new HashMap<Long, Integer>();
+			for (int i = 0; i < count; i++)
+			{
+				int offset = buffer.position();
+				if (!skipEntry(buffer))
+				{
+					LOGGER.warn("SERVICE_AREA_TILE_STORE_DAMAGED", file.getPath(), i);
+					buffer.position(offset);
+					break;
+				}
+				buffer.position(offset);
+				long key = ((long) buffer.getInt() << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+				skipAreas(buffer);
+				offsets.put(key, offset);
+			}
+			return new Snapshot(buffer, offsets, countOffset, buffer.position());
+		}
+	}
+
+	/**
+	 * Moves past the entry at the buffer's position and returns <code>true</code>, or returns <code>false</code> if it
+	 * runs past the end of the file.
+	 */
+	private boolean skipEntry(ByteBuffer buffer)
+	{
+		if (buffer.remaining() < 8)
+			return false;
+		buffer.position(buffer.position() + 8);
+		for (int i = 0; i < breakCount; i++)
+		{
+			if (buffer.remaining() < 4)
+				return false;
+			int length = buffer.getInt();
+			if (length == -1)
+				continue;
+			if (length <= 0 || length > buffer.remaining())
+				return false;
+			buffer.position(buffer.position() + length);
+		}
+		return true;
+	}
+
+	private void skipAreas(ByteBuffer buffer)
+	{
+		for (int i = 0; i < breakCount; i++)
+		{
+			int length = buffer.getInt();
+			if (length > 0)
+				buffer.position(buffer.position() + length);
+		}
+	}
+
+	private MapGeometry[] read(ByteBuffer buffer, int offset)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + 8);
+		MapGeometry[] areas = new MapGeometry[breakCount];
+		for (int i = 0; i < breakCount; i++)
+		{
+			int length = view.getInt();
+			if (length < 0)
+				continue;
+			ByteBuffer shape = view.slice();
+			shape.limit(length);
+			shape.order(ByteOrder.LITTLE_ENDIAN);
+			Geometry polygon = OperatorImportFromESRIShape.local().execute(0, Geometry.Type.Polygon, shape);
+			areas[i] = new MapGeometry(polygon, spatialReference);
+			view.position(view.position() + length);
+		}
+		return areas;
+	}
+
+	private boolean isComplete(MapGeometry[] areas)
+	{
+		if (areas == null || areas.length != breakCount)
+			return false;
+		for (MapGeometry area : areas)
+		{
+			if (area == null)
+				return false;
+		}
+		return true;
+	}
+
+	private long cellKey(double x, double y)
+	{
+		long column = (long) Math.floor(x / cellSize);
+		long row = (long) Math.floor(y / cellSize);
+		return (column << 32) | (row & 0xFFFFFFFFL);
+	}
+
+	private static class Snapshot
+	{
+		static final Snapshot						EMPTY	= new Snapshot(ByteBuffer.allocate(0), Collections.<Long, Integer> emptyMap(), 0, 0);
+
+		final ByteBuffer								buffer;
+		final Map<Long, Integer>				offsets;
+		// position of the entry count, or 0 when there is no usable file to append to
+		final int												countOffset;
+		// end of the last intact entry, where new entries are appended
+		final int												end;
+
+		Snapshot(ByteBuffer buffer, Map<Long, Integer> offsets, int countOffset, int end)
+		{
+			this.buffer = buffer;
+			this.offsets = offsets;
+			this.countOffset = countOffset;
+			this.end = end;
+		}
+	}
+}
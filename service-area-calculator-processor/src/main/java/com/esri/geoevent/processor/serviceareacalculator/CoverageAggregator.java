@@ -0,0 +1,268 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.OperatorClip;
+import com.esri.core.geometry.OperatorUnion;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SimpleGeometryCursor;
+import com.esri.core.geometry.SpatialReference;
+
+/**
+ * Maintains the union of the latest service area of every active track. The plane is divided into square tiles; each
+ * tile keeps the union of the areas overlapping it, clipped to the tile. When a track's area changes only the tiles
+ * under its old and new area are unioned again, and the combined coverage is stitched from the tile unions.
+ * <p>
+ * {@link #update(String, MapGeometry)} may be called from any thread and only records the area; the union is brought
+ * up to date by {@link #getCoverage()}, which must always be called from the same thread.
+ */
+public class CoverageAggregator
+{
+	private final double											tileSize;
+	private final long												trackTimeoutMillis;
+	private final Map<String, Update>					updates		= new ConcurrentHashMap<String, Update>();
+
+	// owned by the thread calling getCoverage()
+	private final Map<String, Member>					members		= new HashMap<String, Member>();
+	private final Map<Long, Tile>							tiles			= new HashMap<Long, Tile>();
+	private final Set<Tile>										dirty			= new HashSet<Tile>();
+	// set when a track joined or left, including through tiles that were dropped rather than marked dirty
+	private boolean														changed;
+	private SpatialReference									sr;
+	private Coverage													coverage;
+
+	public CoverageAggregator(double tileSize, long trackTimeoutMillis)
+	{
+		this.tileSize = tileSize;
+		this.trackTimeoutMillis = trackTimeoutMillis;
+	}
+
+	/**
+	 * Records the latest area of the track. Areas that are not polygons are ignored.
+	 */
+	public void update(String trackId, MapGeometry area)
+	{
+		if (trackId == null || area == null || !(area.getGeometry() instanceof Polygon) || area.getGeometry().isEmpty())
+			return;
+		updates.put(trackId, new Update(area, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Applies the recorded areas, drops the tracks that timed out and returns the combined coverage.
+	 */
+	public Coverage getCoverage()
+	{
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<String, Update>> it = updates.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Update> entry = it.next();
+			it.remove();
+			apply(entry.getKey(), entry.getValue());
+		}
+		if (trackTimeoutMillis > 0)
+		{
+			for (Iterator<Member> it = members.values().iterator(); it.hasNext();)
+			{
+				Member member = it.next();
+				if (now - member.updatedAt > trackTimeoutMillis)
+				{
+					it.remove();
+					unregister(member);
+				}
+			}
+		}
+
+		if (coverage == null || changed)
+		{
+			for (Tile tile : dirty)
+				tile.union = unionOf(tile);
+			dirty.clear();
+			changed = false;
+
+			List<Geometry> pieces = new ArrayList<Geometry>(tiles.size());
+			for (Tile tile : tiles.values())
+			{
+				if (tile.union != null && !tile.union.isEmpty())
+					pieces.add(tile.union);
+			}
+			Geometry union = pieces.isEmpty() ? new Polygon() : OperatorUnion.local().execute(new SimpleGeometryCursor(pieces), sr, null).next();
+			coverage = new Coverage(new MapGeometry(union, sr), members.size());
+		}
+		return coverage;
+	}
+
+	private void apply(String trackId, Update update)
+	{
+		SpatialReference areaSr = update.area.getSpatialReference();
+		if (sr == null)
+			sr = areaSr;
+		else if (areaSr != null && areaSr.getID() != sr.getID())
+			return;
+
+		Polygon polygon = (Polygon) update.area.getGeometry();
+		Member previous = members.get(trackId);
+		if (previous != null && previous.polygon == polygon)
+		{
+			// the same area again, typically reused by the movement filter or the cache
+			previous.updatedAt = update.updatedAt;
+			return;
+		}
+		if (previous != null)
+		{
+			members.remove(trackId);
+			unregister(previous);
+		}
+
+		Envelope2D envelope = new Envelope2D();
+		polygon.queryEnvelope2D(envelope);
+		Member member = new Member(polygon, update.updatedAt);
+		long minColumn = (long) Math.floor(envelope.xmin / tileSize), maxColumn = (long) Math.floor(envelope.xmax / tileSize);
+		long minRow = (long) Math.floor(envelope.ymin / tileSize), maxRow = (long) Math.floor(envelope.ymax / tileSize);
+		for (long row = minRow; row <= maxRow; row++)
+		{
+			for (long column = minColumn; column <= maxColumn; column++)
+			{
+				Long key = (column << 32) ^ (row & 0xFFFFFFFFL);
+				Tile tile = tiles.get(key);
+				if (tile == null)
+				{
+					tile = new Tile(key, column * tileSize, row * tileSize, tileSize);
+					tiles.put(key, tile);
+				}
+				tile.members.add(member);
+				member.tiles.add(tile);
+				dirty.add(tile);
+			}
+		}
+		members.put(trackId, member);
+		changed = true;
+	}
+
+	private void unregister(Member member)
+	{
+		changed = true;
+		for (Tile tile : member.tiles)
+		{
+			tile.members.remove(member);
+			if (tile.members.isEmpty())
+			{
+				tiles.remove(tile.key);
+				dirty.remove(tile);
+			}
+			else
+				dirty.add(tile);
+		}
+	}
+
+	private Geometry unionOf(Tile tile)
+	{
+		List<Geometry> clipped = new ArrayList<Geometry>(tile.members.size());
+		for (Member member : tile.members)
+		{
+			Geometry piece = OperatorClip.local().execute(member.polygon, tile.bounds, sr, null);
+			if (piece != null && !piece.isEmpty())
+				clipped.add(piece);
+		}
+		if (clipped.isEmpty())
+			return null;
+		if (clipped.size() == 1)
+			return clipped.get(0);
+		return OperatorUnion.local().execute(new SimpleGeometryCursor(clipped), sr, null).next();
+	}
+
+	public static class Coverage
+	{
+		private final MapGeometry	area;
+		private final int					trackCount;
+
+		Coverage(MapGeometry area, int trackCount)
+		{
+			this.area = area;
+			this.trackCount = trackCount;
+		}
+
+		public MapGeometry getArea()
+		{
+			return area;
+		}
+
+		public int getTrackCount()
+		{
+			return trackCount;
+		}
+	}
+
+	private static class Update
+	{
+		final MapGeometry	area;
+		final long				updatedAt;
+
+		Update(MapGeometry area, long updatedAt)
+		{
+			this.area = area;
+			this.updatedAt = updatedAt;
+		}
+	}
+
+	private static class Member
+	{
+		final Polygon			polygon;
+		final List<Tile>	tiles	= new ArrayList<Tile>(4);
+		long							updatedAt;
+
+		Member(Polygon polygon, long updatedAt)
+		{
+			this.polygon = polygon;
+			this.updatedAt = updatedAt;
+		}
+	}
+
+	private static class Tile
+	{
+		final Long				key;
+		final Envelope2D	bounds;
+		final Set<Member>	members	= new HashSet<Member>();
+		Geometry					union;
+
+		Tile(Long key, double x, double y, double size)
+		{
+			this.key = key;
+			this.bounds = new Envelope2D(x, y, x + size, y + size);
+		}
+	}
+}
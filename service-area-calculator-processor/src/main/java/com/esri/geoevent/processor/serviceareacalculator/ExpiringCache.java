@@ -0,0 +1,146 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least-recently-used map whose entries expire a fixed time after they were added. Expired entries are no
+ * longer returned by {@link #get(Object)} but stay available to {@link #getStale(Object)} until they are replaced or
+ * evicted.
+ */
+public class ExpiringCache<K, V>
+{
+	private final Map<K, CacheEntry<V>>	entries;
+	private final long							timeToLiveMillis;
+	private final AtomicLong				hits		= new AtomicLong();
+	private final AtomicLong				misses	= new AtomicLong();
+
+	public ExpiringCache(final int maxSize, long timeToLiveMillis)
+	{
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest)
+				{
+					return size() > maxSize;
+				}
+			};
+	}
+
+	public V get(K key)
+	{
+		CacheEntry<V> entry;
+		synchronized (entries)
+		{
+			entry = entries.get(key);
+			if (entry != null && isExpired(entry, System.currentTimeMillis()))
+				entry = null;
+		}
+		if (entry == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * Returns the value even if it has expired, without counting a hit or a miss.
+	 */
+	public V getStale(K key)
+	{
+		synchronized (entries)
+		{
+			CacheEntry<V> entry = entries.get(key);
+			return (entry != null) ? entry.value : null;
+		}
+	}
+
+	public void put(K key, V value)
+	{
+		put(key, value, System.currentTimeMillis());
+	}
+
+	/**
+	 * Adds a value created at the given time, such as one restored from disk, so that it expires as it originally would.
+	 */
+	public void put(K key, V value, long createdAt)
+	{
+		synchronized (entries)
+		{
+			entries.put(key, new CacheEntry<V>(value, createdAt));
+		}
+	}
+
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	private boolean isExpired(CacheEntry<V> entry, long now)
+	{
+		return timeToLiveMillis > 0 && now - entry.createdAt > timeToLiveMillis;
+	}
+
+	private static class CacheEntry<V>
+	{
+		final V			value;
+		final long	createdAt;
+
+		CacheEntry(V value, long createdAt)
+		{
+			this.value = value;
+			this.createdAt = createdAt;
+		}
+	}
+}
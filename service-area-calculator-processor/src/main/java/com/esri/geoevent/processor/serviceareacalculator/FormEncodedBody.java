@@ -0,0 +1,196 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.http.KeyValue;
+
+/**
+ * Writes an application/x-www-form-urlencoded request body in a single pass. The facilities feature set is encoded
+ * directly from the point coordinates, so no intermediate JSON string or map is built, and Z values are never written.
+ * The underlying buffer is reused by each thread.
+ */
+public class FormEncodedBody
+{
+	private static final int										MAX_RETAINED_CAPACITY	= 64 * 1024;
+	private static final char[]									HEX										= "0123456789ABCDEF".toCharArray();
+	private static final ThreadLocal<StringBuilder>	BUFFER								= ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	private final StringBuilder									sb;
+
+	private FormEncodedBody(StringBuilder sb)
+	{
+		this.sb = sb;
+	}
+
+	public static FormEncodedBody create()
+	{
+		StringBuilder sb = BUFFER.get();
+		if (sb.capacity() > MAX_RETAINED_CAPACITY)
+		{
+			sb = new StringBuilder(1024);
+			BUFFER.set(sb);
+		}
+		sb.setLength(0);
+		return new FormEncodedBody(sb);
+	}
+
+	public FormEncodedBody add(String key, String value)
+	{
+		startParameter(key);
+		appendEncoded(value);
+		return this;
+	}
+
+	public FormEncodedBody addAll(Collection<KeyValue> parameters)
+	{
+		if (parameters != null)
+		{
+			for (KeyValue parameter : parameters)
+				add(parameter.getKey(), parameter.getValue());
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the <code>facilities</code> parameter. Facilities are named "1", "2", ... in list order; every point must have
+	 * finite coordinates.
+	 */
+	public FormEncodedBody addFacilities(List<MapGeometry> points)
+	{
+		startParameter("facilities");
+		appendEncoded("{\"type\":\"features\",\"features\":[");
+		for (int i = 0; i < points.size(); i++)
+		{
+			MapGeometry point = points.get(i);
+			if (!(point.getGeometry() instanceof Point))
+				throw new IllegalArgumentException("Facilities must be point geometries.");
+			Point pt = (Point) point.getGeometry();
+			// NaN or Infinity would make the whole facilities parameter invalid JSON
+			if (pt.isEmpty() || !Double.isFinite(pt.getX()) || !Double.isFinite(pt.getY()))
+				throw new IllegalArgumentException("Facility coordinates must be finite numbers.");
+
+			if (i > 0)
+				appendEncoded(",");
+			appendEncoded("{\"geometry\":{\"x\":");
+			sb.append(pt.getX());
+			appendEncoded(",\"y\":");
+			sb.append(pt.getY());
+			appendSpatialReference(point.getSpatialReference());
+			appendEncoded("},\"attributes\":{\"Name\":\"");
+			sb.append(i + 1);
+			appendEncoded("\"}}");
+		}
+		appendEncoded("]}");
+		return this;
+	}
+
+	public byte[] toBytes()
+	{
+		// every character is ASCII once encoded
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public String toString()
+	{
+		return sb.toString();
+	}
+
+	private void appendSpatialReference(SpatialReference sr)
+	{
+		if (sr == null)
+			return;
+		if (sr.getID() > 0)
+		{
+			appendEncoded(",\"spatialReference\":{\"wkid\":");
+			sb.append(sr.getID());
+			appendEncoded("}");
+		}
+		else if (sr.getText() != null)
+		{
+			appendEncoded(",\"spatialReference\":{\"wkt\":\"");
+			appendEncoded(sr.getText().replace("\\", "\\\\").replace("\"", "\\\""));
+			appendEncoded("\"}");
+		}
+	}
+
+	private void startParameter(String key)
+	{
+		if (sb.length() > 0)
+			sb.append('&');
+		appendEncoded(key);
+		sb.append('=');
+	}
+
+	/**
+	 * Percent-encodes the UTF-8 bytes of <code>value</code> the same way {@link java.net.URLEncoder} does.
+	 */
+	private void appendEncoded(String value)
+	{
+		if (value == null)
+			return;
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_')
+				sb.append(c);
+			else if (c == ' ')
+				sb.append('+');
+			else if (c < 0x80)
+				appendByte(c);
+			else if (c < 0x800)
+			{
+				appendByte(0xC0 | (c >> 6));
+				appendByte(0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				appendByte(0xF0 | (cp >> 18));
+				appendByte(0x80 | ((cp >> 12) & 0x3F));
+				appendByte(0x80 | ((cp >> 6) & 0x3F));
+				appendByte(0x80 | (cp & 0x3F));
+			}
+			else
+			{
+				appendByte(0xE0 | (c >> 12));
+				appendByte(0x80 | ((c >> 6) & 0x3F));
+				appendByte(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private void appendByte(int b)
+	{
+		sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.Arrays;
+
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Traces the outline of the marked cells of a grid into a polygon. Outer rings come out clockwise and holes
+ * counter-clockwise, as Esri polygons expect, and diagonally touching cells end up in separate rings, so the result
+ * does not need to be simplified.
+ */
+public class GridOutline
+{
+	private GridOutline()
+	{
+	}
+
+	/**
+	 * @param cells row-major grid, row 0 at <code>originY</code>
+	 */
+	public static Polygon trace(boolean[] cells, int columns, int rows, double originX, double originY, double cellSize)
+	{
+		int stride = columns + 1;
+		int[] outA = new int[stride * (rows + 1)];
+		int[] outB = new int[outA.length];
+		Arrays.fill(outA, -1);
+		Arrays.fill(outB, -1);
+
+		// every cell side between a marked and an unmarked cell, directed so that the marked cell lies on its right
+		for (int r = 0; r < rows; r++)
+		{
+			for (int c = 0; c < columns; c++)
+			{
+				if (!cells[r * columns + c])
+					continue;
+				int bottomLeft = r * stride + c;
+				int topLeft = bottomLeft + stride;
+				if (c == 0 || !cells[r * columns + c - 1])
+					addEdge(outA, outB, bottomLeft, topLeft);
+				if (r == rows - 1 || !cells[(r + 1) * columns + c])
+					addEdge(outA, outB, topLeft, topLeft + 1);
+				if (c == columns - 1 || !cells[r * columns + c + 1])
+					addEdge(outA, outB, topLeft + 1, bottomLeft + 1);
+				if (r == 0 || !cells[(r - 1) * columns + c])
+					addEdge(outA, outB, bottomLeft + 1, bottomLeft);
+			}
+		}
+
+		Polygon polygon = new Polygon();
+		for (int start = 0; start < outA.length; start++)
+		{
+			while (outA[start] >= 0)
+			{
+				int previous = start;
+				int current = takeEdge(outA, outB, start, 0, stride);
+				int direction = current - previous;
+				polygon.startPath(x(start, stride, originX, cellSize), y(start, stride, originY, cellSize));
+				while (current != start)
+				{
+					int next = takeEdge(outA, outB, current, direction, stride);
+					// only corners become vertices
+					if (next - current != direction)
+						polygon.lineTo(x(current, stride, originX, cellSize), y(current, stride, originY, cellSize));
+					direction = next - current;
+					current = next;
+				}
+			}
+		}
+		return polygon;
+	}
+
+	private static void addEdge(int[] outA, int[] outB, int from, int to)
+	{
+		if (outA[from] < 0)
+			outA[from] = to;
+		else
+			outB[from] = to;
+	}
+
+	/**
+	 * Removes and returns an outgoing edge of the vertex. Where two edges leave the same vertex, the one turning right
+	 * relative to the incoming direction is taken.
+	 */
+	private static int takeEdge(int[] outA, int[] outB, int vertex, int direction, int stride)
+	{
+		int next = outA[vertex];
+		if (outB[vertex] >= 0 && direction != 0 && outB[vertex] - vertex == rightTurn(direction, stride))
+		{
+			next = outB[vertex];
+			outB[vertex] = -1;
+			return next;
+		}
+		outA[vertex] = outB[vertex];
+		outB[vertex] = -1;
+		return next;
+	}
+
+	private static int rightTurn(int direction, int stride)
+	{
+		if (direction == stride)
+			return 1;
+		if (direction == 1)
+			return -stride;
+		if (direction == -stride)
+			return -1;
+		return stride;
+	}
+
+	private static double x(int vertex, int stride, double originX, double cellSize)
+	{
+		return originX + (vertex % stride) * cellSize;
+	}
+
+	private static double y(int vertex, int stride, double originY, double cellSize)
+	{
+		return originY + (vertex / stride) * cellSize;
+	}
+}
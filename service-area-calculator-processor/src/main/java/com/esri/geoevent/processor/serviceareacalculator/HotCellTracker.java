@@ -0,0 +1,110 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.esri.core.geometry.MapGeometry;
+
+/**
+ * Counts the service area requests of each cache cell, so that the busiest cells can be solved before a time slot
+ * begins. Scores decay by half every time the busiest cells are taken, so they follow shifts in activity, and cells
+ * that are no longer requested are forgotten.
+ */
+public class HotCellTracker
+{
+	private final int								maxCells;
+	private final Map<String, Cell>	cells	= new ConcurrentHashMap<String, Cell>();
+
+	public HotCellTracker(int maxCells)
+	{
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * Counts a request for the cell. New cells are not tracked while <code>maxCells</code> cells are.
+	 */
+	public void record(String cellKey, MapGeometry point)
+	{
+		Cell cell = cells.get(cellKey);
+		if (cell == null)
+		{
+			if (cells.size() >= maxCells)
+				return;
+			cell = cells.computeIfAbsent(cellKey, key -> new Cell(point));
+		}
+		cell.hits.increment();
+	}
+
+	/**
+	 * Returns a location in each of the <code>count</code> cells with the highest scores, busiest first. Must not be
+	 * called concurrently.
+	 */
+	public List<MapGeometry> takeHottest(int count)
+	{
+		List<Cell> ranked = new ArrayList<Cell>(cells.size());
+		for (Iterator<Cell> it = cells.values().iterator(); it.hasNext();)
+		{
+			Cell cell = it.next();
+			long hits = cell.hits.sumThenReset();
+			if (hits == 0)
+			{
+				it.remove();
+				continue;
+			}
+			cell.score = cell.score / 2 + hits;
+			ranked.add(cell);
+		}
+		ranked.sort((a, b) -> Double.compare(b.score, a.score));
+
+		List<MapGeometry> hottest = new ArrayList<MapGeometry>(Math.min(count, ranked.size()));
+		for (int i = 0; i < ranked.size() && i < count; i++)
+			hottest.add(ranked.get(i).point);
+		return hottest;
+	}
+
+	public int size()
+	{
+		return cells.size();
+	}
+
+	private static class Cell
+	{
+		final MapGeometry	point;
+		final LongAdder		hits	= new LongAdder();
+		double						score;
+
+		Cell(MapGeometry point)
+		{
+			this.point = point;
+		}
+	}
+}
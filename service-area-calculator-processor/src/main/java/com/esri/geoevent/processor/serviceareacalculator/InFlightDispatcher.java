@@ -0,0 +1,116 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs solver work off the calling thread with at most <code>maxInFlight</code> requests outstanding. Callers block
+ * in {@link #submit} once the limit is reached. Results are handed to the emitter as they complete or, when
+ * <code>preserveOrder</code> is set, in submission order for each order key.
+ */
+public class InFlightDispatcher<T>
+{
+	private final int																			maxInFlight;
+	private final boolean																	preserveOrder;
+	private final Semaphore																permits;
+	private final ExecutorService													executor;
+	private final OrderedEmitter<T>												ordered	= new OrderedEmitter<T>();
+
+	public InFlightDispatcher(String name, int maxInFlight, boolean preserveOrder)
+	{
+		this.maxInFlight = maxInFlight;
+		this.preserveOrder = preserveOrder;
+		this.permits = new Semaphore(maxInFlight);
+		this.executor = Executors.newFixedThreadPool(maxInFlight, new NamedThreadFactory(name));
+	}
+
+	public void submit(final String orderKey, Supplier<T> work, final Consumer<T> emitter) throws InterruptedException
+	{
+		permits.acquire();
+		CompletableFuture<T> result;
+		try
+		{
+			result = CompletableFuture.supplyAsync(work, executor);
+		}
+		catch (RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+		result.whenComplete((value, error) -> permits.release());
+		ordered.emit(preserveOrder ? orderKey : null, result, emitter);
+	}
+
+	public void execute(Runnable work) throws InterruptedException
+	{
+		permits.acquire();
+		try
+		{
+			executor.execute(() -> {
+				try
+				{
+					work.run();
+				}
+				finally
+				{
+					permits.release();
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	public int getInFlight()
+	{
+		return maxInFlight - permits.availablePermits();
+	}
+
+	/**
+	 * Stops accepting work and waits for the outstanding requests to finish.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.Arrays;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Calculates service areas in process from a {@link RoadGraph}. The point is snapped to the nearest node, a Dijkstra
+ * search bounded by the drive time finds every reachable edge (partially reachable edges are cut at the limit) and the
+ * reachable edges are buffered into the service area polygon.
+ * <p>
+ * The buffer is built on a grid whose cells are <code>bufferDistance</code> wide: cells crossed by a reachable edge
+ * are marked, grown by one cell, and the outline of the marked cells becomes the polygon. This is far cheaper than a
+ * topological buffer and union of thousands of road segments, at the cost of a stair-stepped outline at the
+ * resolution of the buffer distance.
+ */
+public class LocalServiceAreaSolver
+{
+	private static final int								MAX_GRID_CELLS	= 4000000;
+
+	private final RoadGraph									graph;
+	private final double										bufferDistance;
+	private final ThreadLocal<SearchState>	states;
+
+	public LocalServiceAreaSolver(RoadGraph graph, double bufferDistance)
+	{
+		this.graph = graph;
+		this.bufferDistance = bufferDistance;
+		this.states = ThreadLocal.withInitial(() -> new SearchState(graph.getNodeCount()));
+	}
+
+	/**
+	 * Returns the areas reachable from the point within each of the limits, from a single search bounded by the largest
+	 * limit, or <code>null</code> if the point is not a point or the graph is empty.
+	 */
+	public MapGeometry[] solve(MapGeometry point, double[] limitsSeconds)
+	{
+		if (!(point.getGeometry() instanceof Point))
+			return null;
+		Point pt = (Point) point.getGeometry();
+		int origin = graph.nearestNode(pt.getX(), pt.getY());
+		if (origin < 0)
+			return null;
+
+		SearchState state = states.get();
+		try
+		{
+			double maxLimit = 0;
+			for (double limit : limitsSeconds)
+				maxLimit = Math.max(maxLimit, limit);
+			search(state, origin, maxLimit);
+
+			MapGeometry[] areas = new MapGeometry[limitsSeconds.length];
+			for (int i = 0; i < limitsSeconds.length; i++)
+				areas[i] = new MapGeometry(buffer(reachableEdges(state, origin, limitsSeconds[i])), point.getSpatialReference());
+			return areas;
+		}
+		finally
+		{
+			state.reset();
+		}
+	}
+
+	private void search(SearchState state, int origin, double limitSeconds)
+	{
+		state.settle(origin, 0);
+		state.push(origin, 0);
+		while (state.heapSize > 0)
+		{
+			double distance = state.heapKeys[0];
+			int node = state.pop();
+			if (distance > state.distances[node])
+				continue;
+			for (int edge = graph.getFirstEdge(node), end = graph.getEndEdge(node); edge < end; edge++)
+			{
+				int target = graph.getTarget(edge);
+				double candidate = distance + graph.getSeconds(edge);
+				if (candidate < state.distances[target] && distance < limitSeconds)
+				{
+					state.settle(target, candidate);
+					if (candidate < limitSeconds)
+						state.push(target, candidate);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the reachable edges as x1, y1, x2, y2 quadruples.
+	 */
+	private double[] reachableEdges(SearchState state, int origin, double limitSeconds)
+	{
+		double[] segments = state.segments;
+		int count = 0;
+		for (int i = 0; i < state.touchedCount; i++)
+		{
+			int node = state.touched[i];
+			double start = state.distances[node];
+			if (start >= limitSeconds)
+				continue;
+			double x = graph.getX(node);
+			double y = graph.getY(node);
+			for (int edge = graph.getFirstEdge(node), end = graph.getEndEdge(node); edge < end; edge++)
+			{
+				int target = graph.getTarget(edge);
+				double cost = graph.getSeconds(edge);
+				double fraction = (cost <= 0 || start + cost <= limitSeconds) ? 1.0 : (limitSeconds - start) / cost;
+				if (count + 4 > segments.length)
+					segments = state.segments = Arrays.copyOf(segments, segments.length * 2);
+				segments[count++] = x;
+				segments[count++] = y;
+				segments[count++] = x + (graph.getX(target) - x) * fraction;
+				segments[count++] = y + (graph.getY(target) - y) * fraction;
+			}
+		}
+		if (count == 0)
+		{
+			segments[count++] = graph.getX(origin);
+			segments[count++] = graph.getY(origin);
+			segments[count++] = graph.getX(origin);
+			segments[count++] = graph.getY(origin);
+		}
+		return Arrays.copyOf(segments, count);
+	}
+
+	private Polygon buffer(double[] segments)
+	{
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < segments.length; i += 2)
+		{
+			minX = Math.min(minX, segments[i]);
+			maxX = Math.max(maxX, segments[i]);
+			minY = Math.min(minY, segments[i + 1]);
+			maxY = Math.max(maxY, segments[i + 1]);
+		}
+
+		double cellSize = bufferDistance;
+		double width = maxX - minX + 4 * cellSize;
+		double height = maxY - minY + 4 * cellSize;
+		if ((width / cellSize) * (height / cellSize) > MAX_GRID_CELLS)
+			cellSize = Math.sqrt(width * height / MAX_GRID_CELLS);
+		double originX = minX - 2 * cellSize;
+		double originY = minY - 2 * cellSize;
+		int columns = (int) Math.ceil((maxX - originX) / cellSize) + 2;
+		int rows = (int) Math.ceil((maxY - originY) / cellSize) + 2;
+
+		boolean[] marked = new boolean[columns * rows];
+		double step = cellSize / 2;
+		for (int i = 0; i < segments.length; i += 4)
+		{
+			double x1 = segments[i], y1 = segments[i + 1], x2 = segments[i + 2], y2 = segments[i + 3];
+			int steps = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / step);
+			for (int s = 0; s <= steps; s++)
+			{
+				double t = (steps == 0) ? 0 : (double) s / steps;
+				int c = (int) ((x1 + (x2 - x1) * t - originX) / cellSize);
+				int r = (int) ((y1 + (y2 - y1) * t - originY) / cellSize);
+				marked[r * columns + c] = true;
+			}
+		}
+
+		// grow by one cell in every direction
+		boolean[] grown = new boolean[marked.length];
+		for (int r = 1; r < rows - 1; r++)
+		{
+			for (int c = 1; c < columns - 1; c++)
+			{
+				if (!marked[r * columns + c])
+					continue;
+				for (int dr = -1; dr <= 1; dr++)
+					for (int dc = -1; dc <= 1; dc++)
+						grown[(r + dr) * columns + c + dc] = true;
+			}
+		}
+		return GridOutline.trace(grown, columns, rows, originX, originY, cellSize);
+	}
+
+	/**
+	 * Per-thread search arrays. Only the entries touched by a search are reset afterwards, so the cost of a search
+	 * does not depend on the size of the graph.
+	 */
+	private static class SearchState
+	{
+		final double[]	distances;
+		double[]				segments			= new double[4096];
+		int[]						touched				= new int[1024];
+		int							touchedCount;
+		double[]				heapKeys			= new double[1024];
+		int[]						heapNodes			= new int[1024];
+		int							heapSize;
+
+		SearchState(int nodeCount)
+		{
+			distances = new double[nodeCount];
+			Arrays.fill(distances, Double.MAX_VALUE);
+		}
+
+		void settle(int node, double distance)
+		{
+			if (distances[node] == Double.MAX_VALUE)
+			{
+				if (touchedCount == touched.length)
+					touched = Arrays.copyOf(touched, touchedCount * 2);
+				touched[touchedCount++] = node;
+			}
+			distances[node] = distance;
+		}
+
+		void push(int node, double key)
+		{
+			if (heapSize == heapKeys.length)
+			{
+				heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+				heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+			}
+			int i = heapSize++;
+			while (i > 0)
+			{
+				int parent = (i - 1) >>> 1;
+				if (heapKeys[parent] <= key)
+					break;
+				heapKeys[i] = heapKeys[parent];
+				heapNodes[i] = heapNodes[parent];
+				i = parent;
+			}
+			heapKeys[i] = key;
+			heapNodes[i] = node;
+		}
+
+		int pop()
+		{
+			int result = heapNodes[0];
+			double key = heapKeys[--heapSize];
+			int node = heapNodes[heapSize];
+			int i = 0;
+			while (true)
+			{
+				int child = 2 * i + 1;
+				if (child >= heapSize)
+					break;
+				if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+					child++;
+				if (heapKeys[child] >= key)
+					break;
+				heapKeys[i] = heapKeys[child];
+				heapNodes[i] = heapNodes[child];
+				i = child;
+			}
+			heapKeys[i] = key;
+			heapNodes[i] = node;
+			return result;
+		}
+
+		void reset()
+		{
+			for (int i = 0; i < touchedCount; i++)
+				distances[touched[i]] = Double.MAX_VALUE;
+			touchedCount = 0;
+			heapSize = 0;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects items and hands them to a flush handler once <code>maxSize</code> items are pending or the time window
+ * elapses, whichever comes first.
+ */
+public class MicroBatcher<T>
+{
+	private final int													maxSize;
+	private final Consumer<List<T>>						flushHandler;
+	private final ScheduledExecutorService	scheduler;
+	private List<T>														pending;
+
+	public MicroBatcher(String name, int maxSize, long windowMillis, Consumer<List<T>> flushHandler)
+	{
+		this.maxSize = maxSize;
+		this.flushHandler = flushHandler;
+		this.pending = new ArrayList<T>(maxSize);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(name));
+		scheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void add(T item)
+	{
+		List<T> batch = null;
+		synchronized (this)
+		{
+			pending.add(item);
+			if (pending.size() >= maxSize)
+				batch = drain();
+		}
+		if (batch != null)
+			flushHandler.accept(batch);
+	}
+
+	public void flush()
+	{
+		List<T> batch;
+		synchronized (this)
+		{
+			batch = drain();
+		}
+		if (batch != null)
+			flushHandler.accept(batch);
+	}
+
+	public synchronized int size()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * Stops the window timer and flushes whatever is still pending on the calling thread.
+	 */
+	public void shutdown()
+	{
+		scheduler.shutdown();
+		try
+		{
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	private List<T> drain()
+	{
+		if (pending.isEmpty())
+			return null;
+		List<T> batch = pending;
+		pending = new ArrayList<T>(maxSize);
+		return batch;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named after their pool, so that they never hold up a bundle stop and are easy to tell apart
+ * in a thread dump.
+ */
+public class NamedThreadFactory implements ThreadFactory
+{
+	private final String				name;
+	private final AtomicInteger	count	= new AtomicInteger();
+
+	public NamedThreadFactory(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable work)
+	{
+		Thread thread = new Thread(work, name + "-" + count.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Hands results to their emitter in the order they were registered for each order key, whatever order they complete
+ * in. Results with different keys, or without a key, are emitted as soon as they complete.
+ */
+public class OrderedEmitter<T>
+{
+	private final ConcurrentHashMap<String, CompletableFuture<Void>>	tails	= new ConcurrentHashMap<String, CompletableFuture<Void>>();
+
+	/**
+	 * Emits the result once it and every result registered before it with the same key have been emitted. A failed or
+	 * <code>null</code> result is skipped without holding up the results behind it.
+	 */
+	public void emit(String orderKey, CompletionStage<T> result, Consumer<T> emitter)
+	{
+		CompletableFuture<T> settled = result.toCompletableFuture().handle((value, error) -> (error == null) ? value : null);
+		if (orderKey == null)
+		{
+			settled.thenAccept(value -> accept(emitter, value));
+			return;
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+		CompletableFuture<Void> previous = tails.put(orderKey, done);
+		CompletableFuture<T> ready = (previous == null) ? settled : previous.thenCombine(settled, (ignored, value) -> value);
+		ready.thenAccept(value ->
+			{
+				try
+				{
+					accept(emitter, value);
+				}
+				finally
+				{
+					tails.remove(orderKey, done);
+					done.complete(null);
+				}
+			});
+	}
+
+	private static <T> void accept(Consumer<T> emitter, T value)
+	{
+		if (value == null)
+			return;
+		try
+		{
+			emitter.accept(value);
+		}
+		catch (RuntimeException e)
+		{
+			// the emitter reports its own errors; the results behind this one must still be emitted
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Runs work on a fixed set of worker threads, each with its own bounded queue. Work with the same key always goes to
+ * the same worker, so it runs in submission order, while work with different keys runs in parallel. Work without a
+ * key is spread round robin. {@link #submit} blocks while the worker's queue is full, which slows the caller down to
+ * the pace of the workers instead of buffering without bound.
+ */
+public class PartitionedExecutor
+{
+	private static final Runnable							STOP		= () -> {};
+
+	private final List<BlockingQueue<Runnable>>	queues;
+	private final Thread[]										workers;
+	private final AtomicInteger								next		= new AtomicInteger();
+	// submit holds the read lock from the stopped check until its work is queued, so no work lands behind STOP
+	private final ReadWriteLock								stopLock	= new ReentrantReadWriteLock();
+	private boolean														stopped;
+
+	public PartitionedExecutor(String name, int workerCount, int queueCapacity)
+	{
+		queues = new ArrayList<BlockingQueue<Runnable>>(workerCount);
+		workers = new Thread[workerCount];
+		for (int i = 0; i < workerCount; i++)
+		{
+			BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+			queues.add(queue);
+			workers[i] = new Thread(() -> work(queue), name + "-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Queues the work, waiting while the worker's queue is full. Throws a {@link RejectedExecutionException} once
+	 * {@link #shutdown()} has started.
+	 */
+	public void submit(String key, Runnable work) throws InterruptedException
+	{
+		int index = (key != null) ? key.hashCode() : next.getAndIncrement();
+		stopLock.readLock().lockInterruptibly();
+		try
+		{
+			if (stopped)
+				throw new RejectedExecutionException("The executor has been shut down.");
+			queues.get(Math.floorMod(index, queues.size())).put(work);
+		}
+		finally
+		{
+			stopLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of submitted tasks that have not started yet.
+	 */
+	public int getQueued()
+	{
+		int queued = 0;
+		for (BlockingQueue<Runnable> queue : queues)
+			queued += queue.size();
+		return queued;
+	}
+
+	/**
+	 * Stops accepting work and waits for the queued work to finish.
+	 */
+	public void shutdown()
+	{
+		stopLock.writeLock().lock();
+		try
+		{
+			stopped = true;
+		}
+		finally
+		{
+			stopLock.writeLock().unlock();
+		}
+		try
+		{
+			// queued behind the remaining work, so every worker drains its queue first
+			for (BlockingQueue<Runnable> queue : queues)
+				queue.put(STOP);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			for (Thread worker : workers)
+				worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void work(BlockingQueue<Runnable> queue)
+	{
+		while (true)
+		{
+			Runnable work;
+			try
+			{
+				work = queue.take();
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			if (work == STOP)
+				return;
+			try
+			{
+				work.run();
+			}
+			catch (RuntimeException e)
+			{
+				// the task reports its own errors; the worker must keep going
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.stream.IntStream;
+
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.OperatorGeneralize;
+import com.esri.core.geometry.OperatorSimplify;
+import com.esri.core.geometry.Point2D;
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Reduces the number of vertices of solved polygons. Each ring is generalized with Douglas-Peucker at the configured
+ * tolerance and its coordinates are optionally snapped to a grid of <code>quantum</code> sized cells; rings of large
+ * polygons are processed in parallel. Generalizing rings independently can make them touch or cross, so in
+ * topology-preserving mode the result is simplified afterwards to make it a valid polygon again.
+ */
+public class PolygonGeneralizer
+{
+	private static final int	PARALLEL_THRESHOLD	= 20000;
+
+	private final double			tolerance;
+	private final double			quantum;
+	private final boolean			preserveTopology;
+
+	public PolygonGeneralizer(double tolerance, double quantum, boolean preserveTopology)
+	{
+		this.tolerance = tolerance;
+		this.quantum = quantum;
+		this.preserveTopology = preserveTopology;
+	}
+
+	/**
+	 * Returns the generalized polygon, or the geometry unchanged if it is not a polygon.
+	 */
+	public MapGeometry generalize(MapGeometry area)
+	{
+		if (area == null || !(area.getGeometry() instanceof Polygon))
+			return area;
+		Polygon polygon = (Polygon) area.getGeometry();
+		int ringCount = polygon.getPathCount();
+
+		Polygon[] rings = new Polygon[ringCount];
+		IntStream indices = IntStream.range(0, ringCount);
+		if (ringCount > 1 && polygon.getPointCount() > PARALLEL_THRESHOLD)
+			indices = indices.parallel();
+		indices.forEach(i -> rings[i] = generalizeRing(polygon, i));
+
+		Polygon result = new Polygon();
+		for (Polygon ring : rings)
+		{
+			if (ring != null)
+				result.add(ring, false);
+		}
+		if (preserveTopology)
+			result = (Polygon) OperatorSimplify.local().execute(result, area.getSpatialReference(), true, null);
+		return new MapGeometry(result, area.getSpatialReference());
+	}
+
+	private Polygon generalizeRing(Polygon polygon, int index)
+	{
+		Polygon ring = new Polygon();
+		ring.addPath(polygon, index, true);
+		if (tolerance > 0)
+		{
+			Geometry generalized = OperatorGeneralize.local().execute(ring, tolerance, true, null);
+			if (generalized.isEmpty())
+				return null;
+			ring = (Polygon) generalized;
+		}
+		return (quantum > 0) ? quantize(ring) : ring;
+	}
+
+	/**
+	 * Snaps the vertices to the quantization grid, dropping vertices that collapse onto their predecessor. Returns
+	 * <code>null</code> if fewer than three distinct vertices remain.
+	 */
+	private Polygon quantize(Polygon ring)
+	{
+		Point2D pt = new Point2D();
+		double[] xs = new double[ring.getPointCount()];
+		double[] ys = new double[xs.length];
+		int count = 0;
+		for (int i = 0; i < xs.length; i++)
+		{
+			ring.getXY(i, pt);
+			double x = Math.rint(pt.x / quantum) * quantum;
+			double y = Math.rint(pt.y / quantum) * quantum;
+			if (count > 0 && xs[count - 1] == x && ys[count - 1] == y)
+				continue;
+			xs[count] = x;
+			ys[count] = y;
+			count++;
+		}
+		if (count > 1 && xs[count - 1] == xs[0] && ys[count - 1] == ys[0])
+			count--;
+		if (count < 3)
+			return null;
+
+		Polygon quantized = new Polygon();
+		quantized.startPath(xs[0], ys[0]);
+		for (int i = 1; i < count; i++)
+			quantized.lineTo(xs[i], ys[i]);
+		return quantized;
+	}
+}
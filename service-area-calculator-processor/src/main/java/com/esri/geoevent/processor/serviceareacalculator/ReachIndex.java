@@ -0,0 +1,507 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Point2D;
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Keeps the latest service areas of every track in an STR-packed R-tree, so that the units able to reach a location
+ * within a drive time are found without a solve. Indexes are shared by name: calculating processors publish their
+ * service areas to an index and processors in query mode read it. Each writing processor owns its entries, so two
+ * processors publishing the same track ID to one index do not replace each other's areas, and a processor's entries
+ * leave the index when it releases it.
+ * <p>
+ * Queries read the last packed tree, which is immutable, plus the few tracks changed since it was packed. The tree is
+ * packed again in the background once enough tracks changed or the oldest change is {@link #REPACK_MILLIS} old, so
+ * neither updates nor queries pay for a rebuild. A track that reports the same areas again (from the cache or the
+ * movement filter) only refreshes its location and expiry, so it does not count as a change.
+ */
+public class ReachIndex
+{
+	private static final int											NODE_CAPACITY	= 16;
+	private static final int											MIN_CHANGES		= 64;
+	private static final long											REPACK_MILLIS	= 1000;
+	private static final Map<String, ReachIndex>	NAMED					= new HashMap<String, ReachIndex>();
+
+	private final String													name;
+	private final Map<String, Unit>								units					= new ConcurrentHashMap<String, Unit>();
+	// the units added since the packed tree's version, by key
+	private final Map<String, Unit>								changes				= new ConcurrentHashMap<String, Unit>();
+	// unit versions are assigned under the lock of the changes, so a packed version covers every unit up to it
+	private final AtomicLong											versions			= new AtomicLong();
+	private final AtomicBoolean										repacking			= new AtomicBoolean();
+	private volatile long													changedSince;
+	private int																		references;
+	private volatile Packed												packed				= new Packed(null, 0, 0);
+
+	private ReachIndex(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Returns the index of the given name, creating it if no processor uses it yet. Every call must be matched by a call
+	 * to {@link #release(ReachIndex, String)}.
+	 */
+	public static ReachIndex acquire(String name)
+	{
+		synchronized (NAMED)
+		{
+			ReachIndex index = NAMED.computeIfAbsent(name, ReachIndex::new);
+			index.references++;
+			return index;
+		}
+	}
+
+	/**
+	 * Releases an index obtained from {@link #acquire(String)} and removes the entries the owner published to it; the
+	 * index is discarded when no processor uses it.
+	 */
+	public static void release(ReachIndex index, String owner)
+	{
+		synchronized (NAMED)
+		{
+			if (--index.references == 0)
+				NAMED.remove(index.name, index);
+		}
+		index.removeOwner(owner);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Records the areas of the owner's track, indexed like <code>breaks</code> (in minutes), and the location they were
+	 * solved for. The track is dropped after <code>timeoutMillis</code> without an update, or kept until replaced when
+	 * 0.
+	 */
+	public void update(String owner, String trackId, MapGeometry location, MapGeometry[] areas, double[] breaks, long timeoutMillis)
+	{
+		if (trackId == null || areas == null)
+			return;
+		long expiresAt = (timeoutMillis > 0) ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+		Point point = (location != null && location.getGeometry() instanceof Point) ? (Point) location.getGeometry() : null;
+		double x = (point != null) ? point.getX() : Double.NaN;
+		double y = (point != null) ? point.getY() : Double.NaN;
+
+		String key = owner + '\u0000' + trackId;
+		Unit previous = units.get(key);
+		if (previous != null && previous.isSameAreas(areas))
+		{
+			previous.x = x;
+			previous.y = y;
+			previous.expiresAt = expiresAt;
+			return;
+		}
+
+		Unit unit = new Unit(key, trackId, areas, breaks);
+		if (unit.isEmpty())
+			return;
+		unit.x = x;
+		unit.y = y;
+		unit.expiresAt = expiresAt;
+		synchronized (changes)
+		{
+			unit.version = versions.incrementAndGet();
+			units.put(key, unit);
+			if (changes.isEmpty())
+				changedSince = System.currentTimeMillis();
+			changes.put(key, unit);
+		}
+		repackIfStale();
+	}
+
+	public int size()
+	{
+		return units.size();
+	}
+
+	/**
+	 * Returns the IDs of the tracks whose service area for the largest break not exceeding <code>driveTime</code>
+	 * minutes contains the location, nearest first by straight-line distance. A <code>driveTime</code> of 0 uses each
+	 * track's first break. Tracks whose areas are in a different spatial reference than the location are skipped.
+	 */
+	public List<String> query(MapGeometry location, double driveTime)
+	{
+		List<String> result = new ArrayList<String>();
+		if (location == null || !(location.getGeometry() instanceof Point) || location.getGeometry().isEmpty())
+			return result;
+		Point point = (Point) location.getGeometry();
+		int wkid = (location.getSpatialReference() != null) ? location.getSpatialReference().getID() : 0;
+		double x = point.getX(), y = point.getY();
+		long now = System.currentTimeMillis();
+
+		repackIfStale();
+		Packed current = packed;
+		List<Unit> found = new ArrayList<Unit>();
+		if (current.root != null)
+			search(current.root, current.version, x, y, wkid, driveTime, now, found);
+		for (Unit unit : changes.values())
+		{
+			if (unit.version > current.version && isMatch(unit, x, y, wkid, driveTime, now))
+				found.add(unit);
+		}
+
+		found.sort(Comparator.comparingDouble(unit -> distanceSquared(unit, x, y)));
+		// a track published by several processors is listed once, at its nearest location
+		Map<String, Boolean> trackIds = new LinkedHashMap<String, Boolean>();
+		for (Unit unit : found)
+			trackIds.putIfAbsent(unit.trackId, Boolean.TRUE);
+		result.addAll(trackIds.keySet());
+		return result;
+	}
+
+	private void search(Node node, long version, double x, double y, int wkid, double driveTime, long now, List<Unit> found)
+	{
+		if (node.units != null)
+		{
+			for (Unit unit : node.units)
+			{
+				// replaced or removed units are skipped; units newer than the tree are found among the changes
+				if (unit.version <= version && units.get(unit.key) == unit && isMatch(unit, x, y, wkid, driveTime, now))
+					found.add(unit);
+			}
+		}
+		else
+		{
+			for (Node child : node.children)
+			{
+				if (child.contains(x, y))
+					search(child, version, x, y, wkid, driveTime, now, found);
+			}
+		}
+	}
+
+	private static boolean isMatch(Unit unit, double x, double y, int wkid, double driveTime, long now)
+	{
+		return unit.contains(x, y) && unit.expiresAt > now && (wkid == 0 || unit.wkid == 0 || wkid == unit.wkid) && unit.reaches(x, y, driveTime);
+	}
+
+	private static double distanceSquared(Unit unit, double x, double y)
+	{
+		double dx = unit.x - x, dy = unit.y - y;
+		double d = dx * dx + dy * dy;
+		return Double.isNaN(d) ? Double.MAX_VALUE : d;
+	}
+
+	private void removeOwner(String owner)
+	{
+		String prefix = owner + '\u0000';
+		units.keySet().removeIf(key -> key.startsWith(prefix));
+		changes.keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	/**
+	 * Packs the tree again in the background when many tracks changed since the last packing, or the oldest change
+	 * waited long enough. At most one packing runs at a time.
+	 */
+	private void repackIfStale()
+	{
+		int changeCount = changes.size();
+		if (changeCount == 0)
+			return;
+		boolean stale = changeCount >= Math.max(MIN_CHANGES, packed.size / 16) || System.currentTimeMillis() - changedSince >= REPACK_MILLIS;
+		if (!stale || !repacking.compareAndSet(false, true))
+			return;
+		try
+		{
+			ForkJoinPool.commonPool().execute(this::repack);
+		}
+		catch (RejectedExecutionException e)
+		{
+			repacking.set(false);
+		}
+	}
+
+	private void repack()
+	{
+		try
+		{
+			// every unit up to this version is in the map read below; later ones stay among the changes
+			long version;
+			synchronized (changes)
+			{
+				version = versions.get();
+			}
+			Packed next = build(version);
+			packed = next;
+			changes.values().removeIf(unit -> unit.version <= version);
+			if (!changes.isEmpty())
+				changedSince = System.currentTimeMillis();
+		}
+		finally
+		{
+			repacking.set(false);
+		}
+	}
+
+	private Packed build(long version)
+	{
+		long now = System.currentTimeMillis();
+		List<Unit> live = new ArrayList<Unit>(units.size());
+		for (Unit unit : units.values())
+		{
+			if (unit.expiresAt > now)
+				live.add(unit);
+			else
+				units.remove(unit.key, unit);
+		}
+		if (live.isEmpty())
+			return new Packed(null, version, 0);
+
+		List<Node> level = new ArrayList<Node>();
+		for (List<Unit> group : pack(live))
+			level.add(new Node(null, group.toArray(new Unit[group.size()])));
+		while (level.size() > 1)
+		{
+			List<Node> parents = new ArrayList<Node>();
+			for (List<Node> group : pack(level))
+				parents.add(new Node(group.toArray(new Node[group.size()]), null));
+			level = parents;
+		}
+		return new Packed(level.get(0), version, live.size());
+	}
+
+	/**
+	 * Sort-Tile-Recursive grouping: sorts the boxes into vertical slices by center x, then each slice by center y, and
+	 * cuts the slices into groups of {@link #NODE_CAPACITY}.
+	 */
+	private static <T extends Bounds> List<List<T>> pack(List<T> boxes)
+	{
+		int count = boxes.size();
+		int groupCount = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int sliceSize = (int) Math.ceil(Math.sqrt(groupCount)) * NODE_CAPACITY;
+		ToDoubleFunction<T> centerX = box -> box.minX + box.maxX;
+		ToDoubleFunction<T> centerY = box -> box.minY + box.maxY;
+
+		boxes.sort(Comparator.comparingDouble(centerX));
+		List<List<T>> groups = new ArrayList<List<T>>(groupCount);
+		for (int s = 0; s < count; s += sliceSize)
+		{
+			List<T> slice = new ArrayList<T>(boxes.subList(s, Math.min(count, s + sliceSize)));
+			slice.sort(Comparator.comparingDouble(centerY));
+			for (int g = 0; g < slice.size(); g += NODE_CAPACITY)
+				groups.add(slice.subList(g, Math.min(slice.size(), g + NODE_CAPACITY)));
+		}
+		return groups;
+	}
+
+	private static class Bounds
+	{
+		double	minX	= Double.MAX_VALUE;
+		double	minY	= Double.MAX_VALUE;
+		double	maxX	= -Double.MAX_VALUE;
+		double	maxY	= -Double.MAX_VALUE;
+
+		void include(Bounds other)
+		{
+			minX = Math.min(minX, other.minX);
+			minY = Math.min(minY, other.minY);
+			maxX = Math.max(maxX, other.maxX);
+			maxY = Math.max(maxY, other.maxY);
+		}
+
+		boolean contains(double x, double y)
+		{
+			return x >= minX && x <= maxX && y >= minY && y <= maxY;
+		}
+
+		boolean isEmpty()
+		{
+			return minX > maxX;
+		}
+	}
+
+	/**
+	 * A packed tree and the last unit version it was packed from.
+	 */
+	private static class Packed
+	{
+		final Node	root;
+		final long	version;
+		final int		size;
+
+		Packed(Node root, long version, int size)
+		{
+			this.root = root;
+			this.version = version;
+			this.size = size;
+		}
+	}
+
+	private static class Node extends Bounds
+	{
+		final Node[]	children;
+		final Unit[]	units;
+
+		Node(Node[] children, Unit[] units)
+		{
+			this.children = children;
+			this.units = units;
+			for (Bounds box : (children != null) ? children : units)
+				include(box);
+		}
+	}
+
+	/**
+	 * The areas of one track. Its bounds are those of all of its areas.
+	 */
+	private static class Unit extends Bounds
+	{
+		final String					key;
+		final String					trackId;
+		final MapGeometry[]		sources;
+		final Area[]					areas;
+		final double[]				breaks;
+		final int							wkid;
+		volatile double				x;
+		volatile double				y;
+		volatile long					expiresAt;
+		long									version;
+
+		Unit(String key, String trackId, MapGeometry[] sources, double[] breaks)
+		{
+			this.key = key;
+			this.trackId = trackId;
+			this.sources = sources.clone();
+			this.breaks = breaks;
+			this.areas = new Area[sources.length];
+			int sr = 0;
+			for (int i = 0; i < sources.length; i++)
+			{
+				if (sources[i] != null && sources[i].getGeometry() instanceof Polygon && !sources[i].getGeometry().isEmpty())
+				{
+					areas[i] = new Area((Polygon) sources[i].getGeometry());
+					include(areas[i]);
+					if (sr == 0 && sources[i].getSpatialReference() != null)
+						sr = sources[i].getSpatialReference().getID();
+				}
+			}
+			this.wkid = sr;
+		}
+
+		boolean isSameAreas(MapGeometry[] other)
+		{
+			if (other.length != sources.length)
+				return false;
+			for (int i = 0; i < sources.length; i++)
+			{
+				if (other[i] != sources[i])
+					return false;
+			}
+			return true;
+		}
+
+		boolean reaches(double x, double y, double driveTime)
+		{
+			int index = -1;
+			if (driveTime <= 0)
+				index = 0;
+			else
+			{
+				for (int i = 0; i < breaks.length && i < areas.length; i++)
+				{
+					if (breaks[i] <= driveTime + 1e-9 && (index < 0 || breaks[i] > breaks[index]))
+						index = i;
+				}
+			}
+			return index >= 0 && index < areas.length && areas[index] != null && areas[index].contains(x, y);
+		}
+	}
+
+	/**
+	 * A polygon flattened into coordinate arrays for a fast even-odd point test.
+	 */
+	private static class Area extends Bounds
+	{
+		final double[]	coordinates;
+		final int[]			pathStarts;
+
+		Area(Polygon polygon)
+		{
+			int pathCount = polygon.getPathCount();
+			pathStarts = new int[pathCount + 1];
+			coordinates = new double[polygon.getPointCount() * 2];
+			Point2D pt = new Point2D();
+			for (int p = 0, k = 0; p < pathCount; p++)
+			{
+				pathStarts[p] = polygon.getPathStart(p);
+				for (int i = polygon.getPathStart(p), end = polygon.getPathEnd(p); i < end; i++)
+				{
+					polygon.getXY(i, pt);
+					coordinates[k++] = pt.x;
+					coordinates[k++] = pt.y;
+				}
+			}
+			pathStarts[pathCount] = polygon.getPointCount();
+			Envelope2D envelope = new Envelope2D();
+			polygon.queryEnvelope2D(envelope);
+			minX = envelope.xmin;
+			minY = envelope.ymin;
+			maxX = envelope.xmax;
+			maxY = envelope.ymax;
+		}
+
+		@Override
+		boolean contains(double x, double y)
+		{
+			if (!super.contains(x, y))
+				return false;
+			boolean inside = false;
+			for (int p = 0; p < pathStarts.length - 1; p++)
+			{
+				int start = pathStarts[p], end = pathStarts[p + 1];
+				for (int i = start, j = end - 1; i < end; j = i++)
+				{
+					double xi = coordinates[2 * i], yi = coordinates[2 * i + 1];
+					double xj = coordinates[2 * j], yj = coordinates[2 * j + 1];
+					if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+						inside = !inside;
+				}
+			}
+			return inside;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+
+import com.esri.ges.core.http.KeyValue;
+
+/**
+ * What a solver request needs from an ArcGIS Server connection, resolved once and reused by every request until it is
+ * refreshed: the solver URI, the referer and the default parameters holding the decrypted token.
+ */
+public class ResolvedConnection
+{
+	private final URI										solverUri;
+	private final String								referer;
+	private final Collection<KeyValue>	defaultParams;
+
+	public ResolvedConnection(URI solverUri, String referer, Collection<KeyValue> defaultParams)
+	{
+		this.solverUri = solverUri;
+		this.referer = referer;
+		this.defaultParams = defaultParams;
+	}
+
+	public static URI solverUri(String connectionUrl, String solverPath) throws URISyntaxException
+	{
+		return new URI(connectionUrl + solverPath);
+	}
+
+	public URI getSolverUri()
+	{
+		return solverUri;
+	}
+
+	public String getReferer()
+	{
+		return referer;
+	}
+
+	public Collection<KeyValue> getDefaultParams()
+	{
+		return defaultParams;
+	}
+}
@@ -0,0 +1,573 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.OperatorExportToESRIShape;
+import com.esri.core.geometry.OperatorImportFromESRIShape;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Append-only log of solved service areas, kept in a memory-mapped file so that the solver's work survives restarts
+ * and can be read back offline.
+ * <p>
+ * {@link #append(String, MapGeometry[])} only queues the areas; a background thread encodes and writes them and forces
+ * the file to disk at most once per sync interval. The file holds a header (magic, fingerprint of the solve settings)
+ * followed by records: body length, CRC32 of the body, and the body itself (time, key, wkid, break count and, for every
+ * break, the length of the polygon in Esri shape format, -1 when there is none, followed by its bytes). A zero length
+ * ends the log, and reading stops at the first record whose checksum does not match, which is where a crash
+ * interrupted a write. A file written with other solve settings is copied aside and written over.
+ * <p>
+ * Once the log has doubled in size since it was last compacted, it is rewritten in place with only the latest record
+ * of every key that is younger than the retention time. The file is never renamed or truncated while it is mapped,
+ * which Windows does not allow.
+ */
+public class ResultLog
+{
+	private static final BundleLogger		LOGGER							= BundleLoggerFactory.getLogger(ResultLog.class);
+	private static final int						MAGIC								= 0x53414C31;
+	private static final int						MAP_CHUNK						= 16 << 20;
+	private static final int						MIN_COMPACT_SIZE		= 1 << 20;
+	private static final int						QUEUE_CAPACITY			= 10000;
+	private static final Entry					STOP								= new Entry(null, 0, null);
+
+	private final File									file;
+	private final String								fingerprint;
+	private final long									syncIntervalMillis;
+	private final long									retentionMillis;
+	private final BlockingQueue<Entry>	queue								= new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+	private final AtomicLong						dropped							= new AtomicLong();
+	private Thread											writer;
+
+	// owned by the writer thread once it is started
+	private FileChannel									channel;
+	private MappedByteBuffer						buffer;
+	private int													dataStart;
+	private int													compactedSize;
+	private boolean											compactionFailed;
+	private final Map<String, Position>	positions						= new HashMap<String, Position>();
+
+	public ResultLog(File file, String fingerprint, long syncIntervalMillis, long retentionMillis)
+	{
+		this.file = file;
+		this.fingerprint = fingerprint;
+		this.syncIntervalMillis = Math.max(1, syncIntervalMillis);
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Hands the latest areas of every key still within the retention time to <code>replay</code>, then starts the
+	 * background writer. Returns the number of replayed entries.
+	 */
+	public synchronized int open(Consumer<Entry> replay) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+
+		restoreCompacted();
+		Map<String, Entry> latest = new LinkedHashMap<String, Entry>();
+		int end = 0;
+		if (file.exists() && file.length() > 0)
+		{
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel existing = raf.getChannel())
+			{
+				ByteBuffer mapped = existing.map(FileChannel.MapMode.READ_ONLY, 0, existing.size());
+				if (readHeader(mapped, fingerprint))
+					end = scan(mapped, latest, positions);
+			}
+			// kept for reading offline; the log itself is overwritten in place, since a mapped file cannot be replaced
+			if (end == 0)
+				Files.copy(file.toPath(), new File(file.getPath() + ".old").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), MAP_CHUNK));
+		if (end == 0)
+		{
+			positions.clear();
+			writeHeader(buffer, fingerprint);
+			end = buffer.position();
+		}
+		dataStart = headerSize(fingerprint);
+		buffer.position(end);
+		buffer.putInt(end, 0);
+		compactedSize = end;
+
+		int replayed = 0;
+		long now = System.currentTimeMillis();
+		for (Entry entry : latest.values())
+		{
+			if (retentionMillis <= 0 || now - entry.time <= retentionMillis)
+			{
+				replay.accept(entry);
+				replayed++;
+			}
+		}
+
+		writer = new Thread(this::run, "ServiceAreaResultLog-" + file.getName());
+		writer.setDaemon(true);
+		writer.start();
+		return replayed;
+	}
+
+	/**
+	 * Queues the areas of the key for writing. Entries are dropped, and counted, while the writer is behind by more than
+	 * {@value #QUEUE_CAPACITY} entries.
+	 */
+	public void append(String key, MapGeometry[] areas)
+	{
+		if (key == null || areas == null)
+			return;
+		if (!queue.offer(new Entry(key, System.currentTimeMillis(), areas)))
+			dropped.incrementAndGet();
+	}
+
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the queued entries, forces them to disk and stops the writer. Waits at most 30 seconds for room in the queue
+	 * and again for the writer to finish.
+	 */
+	public synchronized void close()
+	{
+		if (writer == null)
+			return;
+		try
+		{
+			if (writer.isAlive() && queue.offer(STOP, 30, TimeUnit.SECONDS))
+				writer.join(TimeUnit.SECONDS.toMillis(30));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+	/**
+	 * Reads every valid record of a log file, oldest first, whatever the solve settings it was written with.
+	 */
+	public static void read(File file, Consumer<Entry> entries) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (!readHeader(mapped, null))
+				return;
+			Map<Integer, SpatialReference> references = new HashMap<Integer, SpatialReference>();
+			while (true)
+			{
+				int offset = mapped.position();
+				Entry entry = readRecord(mapped, references);
+				if (entry == null)
+					break;
+				entries.accept(entry);
+				mapped.position(offset + 8 + mapped.getInt(offset));
+			}
+		}
+	}
+
+	private void run()
+	{
+		long lastSync = System.currentTimeMillis();
+		boolean unsynced = false;
+		try
+		{
+			while (true)
+			{
+				Entry entry = queue.poll(syncIntervalMillis, TimeUnit.MILLISECONDS);
+				if (entry == STOP)
+					break;
+				if (entry != null)
+				{
+					write(entry);
+					unsynced = true;
+				}
+				long now = System.currentTimeMillis();
+				if (unsynced && now - lastSync >= syncIntervalMillis)
+				{
+					buffer.force();
+					unsynced = false;
+					lastSync = now;
+					if (!compactionFailed && buffer.position() > Math.max(MIN_COMPACT_SIZE, 2L * compactedSize))
+						compact();
+				}
+			}
+			for (Entry entry = queue.poll(); entry != null; entry = queue.poll())
+			{
+				if (entry != STOP)
+					write(entry);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			buffer.force();
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.info(e.getMessage(), e);
+			}
+		}
+	}
+
+	private void write(Entry entry)
+	{
+		try
+		{
+			byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+			int wkid = 0;
+			byte[][] shapes = new byte[entry.areas.length][];
+			int bodySize = 8 + 2 + key.length + 4 + 4;
+			for (int i = 0; i < shapes.length; i++)
+			{
+				MapGeometry area = entry.areas[i];
+				if (area != null && area.getGeometry() != null)
+				{
+					ByteBuffer shape = OperatorExportToESRIShape.local().execute(0, area.getGeometry());
+					shapes[i] = new byte[shape.remaining()];
+					shape.get(shapes[i]);
+					bodySize += shapes[i].length;
+					if (wkid == 0 && area.getSpatialReference() != null)
+						wkid = area.getSpatialReference().getID();
+				}
+				bodySize += 4;
+			}
+
+			ensureCapacity(8 + bodySize + 4);
+			int offset = buffer.position();
+			buffer.position(offset + 8);
+			buffer.putLong(entry.time);
+			buffer.putShort((short) key.length);
+			buffer.put(key);
+			buffer.putInt(wkid);
+			buffer.putInt(shapes.length);
+			for (byte[] shape : shapes)
+			{
+				buffer.putInt((shape != null) ? shape.length : -1);
+				if (shape != null)
+					buffer.put(shape);
+			}
+			int end = buffer.position();
+			buffer.putInt(end, 0);
+
+			// the length is written last, so a record torn by a crash ends the log
+			buffer.putInt(offset + 4, checksum(buffer, offset + 8, bodySize));
+			buffer.putInt(offset, bodySize);
+			positions.put(entry.key, new Position(offset, entry.time));
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("SERVICE_AREA_RESULT_LOG_ERROR", file.getPath(), e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+	}
+
+	private void ensureCapacity(int needed) throws IOException
+	{
+		if (buffer.remaining() >= needed)
+			return;
+		int position = buffer.position();
+		long size = (long) buffer.capacity() + Math.max(MAP_CHUNK, needed);
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Result log is full.");
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		buffer.position(position);
+	}
+
+	/**
+	 * Rewrites the log in place with the latest record of every key within the retention time. The kept records are
+	 * first written to a side file that is only renamed to <code>.compact</code> once it is complete, so that
+	 * {@link #restoreCompacted()} can finish the rewrite if the process stops halfway through it. If the rewrite fails
+	 * once the side file is in place, the log keeps growing at its end and is not compacted again; the side file is left
+	 * for the next start, which loses the records logged since.
+	 */
+	private void compact()
+	{
+		File temp = new File(file.getPath() + ".tmp");
+		File compacted = new File(file.getPath() + ".compact");
+		long now = System.currentTimeMillis();
+		Map<String, Position> kept = new HashMap<String, Position>();
+		int size;
+		boolean replacing = false;
+		try
+		{
+			try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+			{
+				ByteBuffer header = ByteBuffer.allocate(headerSize(fingerprint));
+				writeHeader(header, fingerprint);
+				header.flip();
+				long written = out.write(header);
+				for (Map.Entry<String, Position> entry : positions.entrySet())
+				{
+					Position position = entry.getValue();
+					if (retentionMillis > 0 && now - position.time > retentionMillis)
+						continue;
+					ByteBuffer record = buffer.duplicate();
+					record.position(position.offset);
+					record.limit(position.offset + 8 + buffer.getInt(position.offset));
+					kept.put(entry.getKey(), new Position((int) written, position.time));
+					while (record.hasRemaining())
+						written += out.write(record);
+				}
+				out.force(true);
+				size = (int) written;
+			}
+			Files.move(temp.toPath(), compacted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			replacing = true;
+			copyOver(compacted, size);
+			Files.delete(compacted.toPath());
+		}
+		catch (IOException | RuntimeException e)
+		{
+			LOGGER.error("SERVICE_AREA_RESULT_LOG_ERROR", file.getPath(), e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+			temp.delete();
+			// the log is only touched once the side file is complete, so until then it is still intact
+			if (replacing)
+				compactionFailed = true;
+			compactedSize = buffer.position();
+			return;
+		}
+
+		positions.clear();
+		positions.putAll(kept);
+		buffer.position(size);
+		compactedSize = size;
+	}
+
+	/**
+	 * Copies the complete side file of a compaction over the start of the mapped log and ends the log after it.
+	 */
+	void copyOver(File compacted, int size) throws IOException
+	{
+		try (FileChannel in = FileChannel.open(compacted.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer target = buffer.duplicate();
+			target.position(0);
+			target.limit(size);
+			while (target.hasRemaining() && in.read(target) >= 0)
+				;
+		}
+		buffer.putInt(size, 0);
+		buffer.force();
+	}
+
+	/**
+	 * Finishes a compaction that was interrupted after its side file was complete, by copying the side file over the
+	 * start of the log.
+	 */
+	private void restoreCompacted() throws IOException
+	{
+		new File(file.getPath() + ".tmp").delete();
+		File compacted = new File(file.getPath() + ".compact");
+		if (!compacted.exists())
+			return;
+		try (FileChannel in = FileChannel.open(compacted.toPath(), StandardOpenOption.READ); FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			long size = in.size();
+			for (long copied = 0; copied < size;)
+				copied += in.transferTo(copied, size - copied, out);
+			ByteBuffer end = ByteBuffer.allocate(4);
+			while (end.hasRemaining())
+				out.write(end, size + end.position());
+			out.force(true);
+		}
+		Files.delete(compacted.toPath());
+	}
+
+	private static int headerSize(String fingerprint)
+	{
+		return 8 + fingerprint.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private static void writeHeader(ByteBuffer target, String fingerprint)
+	{
+		byte[] bytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+		target.putInt(MAGIC);
+		target.putInt(bytes.length);
+		target.put(bytes);
+	}
+
+	/**
+	 * Reads the header and checks it against the fingerprint, unless that is <code>null</code>.
+	 */
+	private static boolean readHeader(ByteBuffer source, String fingerprint)
+	{
+		if (source.remaining() < 8 || source.getInt() != MAGIC)
+			return false;
+		int length = source.getInt();
+		if (length < 0 || length > source.remaining())
+			return false;
+		byte[] bytes = new byte[length];
+		source.get(bytes);
+		return fingerprint == null || fingerprint.equals(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Collects the latest entry and record position of every key and returns the offset at which the log ends.
+	 */
+	private static int scan(ByteBuffer source, Map<String, Entry> latest, Map<String, Position> positions)
+	{
+		Map<Integer, SpatialReference> references = new HashMap<Integer, SpatialReference>();
+		while (true)
+		{
+			int offset = source.position();
+			Entry entry = readRecord(source, references);
+			if (entry == null)
+				return offset;
+			latest.remove(entry.key);
+			latest.put(entry.key, entry);
+			positions.put(entry.key, new Position(offset, entry.time));
+			source.position(offset + 8 + source.getInt(offset));
+		}
+	}
+
+	/**
+	 * Decodes the record at the current position, or returns <code>null</code> at the end of the log or at a record
+	 * that was not completely written.
+	 */
+	private static Entry readRecord(ByteBuffer source, Map<Integer, SpatialReference> references)
+	{
+		int offset = source.position();
+		if (source.limit() - offset < 8)
+			return null;
+		int length = source.getInt(offset);
+		if (length <= 0 || length > source.limit() - offset - 8 || checksum(source, offset + 8, length) != source.getInt(offset + 4))
+			return null;
+
+		ByteBuffer body = source.duplicate();
+		body.position(offset + 8);
+		body.limit(offset + 8 + length);
+		long time = body.getLong();
+		byte[] key = new byte[body.getShort() & 0xFFFF];
+		body.get(key);
+		int wkid = body.getInt();
+		SpatialReference sr = (wkid != 0) ? references.computeIfAbsent(wkid, SpatialReference::create) : null;
+		MapGeometry[] areas = new MapGeometry[body.getInt()];
+		for (int i = 0; i < areas.length; i++)
+		{
+			int shapeLength = body.getInt();
+			if (shapeLength < 0)
+				continue;
+			ByteBuffer shape = body.slice();
+			shape.limit(shapeLength);
+			shape.order(ByteOrder.LITTLE_ENDIAN);
+			Geometry polygon = OperatorImportFromESRIShape.local().execute(0, Geometry.Type.Polygon, shape);
+			areas[i] = new MapGeometry(polygon, sr);
+			body.position(body.position() + shapeLength);
+		}
+		return new Entry(new String(key, StandardCharsets.UTF_8), time, areas);
+	}
+
+	private static int checksum(ByteBuffer source, int offset, int length)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer view = source.duplicate();
+		view.limit(offset + length);
+		view.position(offset);
+		crc.update(view);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * The areas solved for one request key, and when they were solved.
+	 */
+	public static class Entry
+	{
+		private final String				key;
+		private final long					time;
+		private final MapGeometry[]	areas;
+
+		Entry(String key, long time, MapGeometry[] areas)
+		{
+			this.key = key;
+			this.time = time;
+			this.areas = areas;
+		}
+
+		public String getKey()
+		{
+			return key;
+		}
+
+		public long getTime()
+		{
+			return time;
+		}
+
+		public MapGeometry[] getAreas()
+		{
+			return areas;
+		}
+	}
+
+	private static class Position
+	{
+		final int		offset;
+		final long	time;
+
+		Position(int offset, long time)
+		{
+			this.offset = offset;
+			this.time = time;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directed road network in compressed sparse row form, memory-mapped from a binary graph file. Node coordinates are in
+ * the units of the spatial reference of the events being processed; edge costs are travel times in seconds.
+ * <p>
+ * The binary layout is: magic, node count, edge count, node x[], node y[], edge offsets[nodeCount + 1], edge
+ * targets[], edge seconds[]. {@link #load(File)} compiles a CSV edge list with the columns
+ * <code>fromX,fromY,toX,toY,lengthMeters,speedKmh[,oneway]</code> into this layout next to the CSV file the first time
+ * it is loaded.
+ */
+public class RoadGraph
+{
+	private static final int	MAGIC				= 0x53414731;
+	private static final int	HEADER_SIZE	= 12;
+
+	private final int					nodeCount;
+	private final int					edgeCount;
+	private final DoubleBuffer	xs;
+	private final DoubleBuffer	ys;
+	private final IntBuffer			offsets;
+	private final IntBuffer			targets;
+	private final FloatBuffer		seconds;
+
+	// uniform grid over the nodes used to snap points to the network
+	private double							minX, minY, cellSize;
+	private int									columns, rows;
+	private int[]								cellStart;
+	private int[]								cellNodes;
+
+	private RoadGraph(MappedByteBuffer buffer) throws IOException
+	{
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a road graph file.");
+		nodeCount = buffer.getInt(4);
+		edgeCount = buffer.getInt(8);
+
+		long position = HEADER_SIZE;
+		xs = slice(buffer, position, nodeCount * 8L).asDoubleBuffer();
+		position += nodeCount * 8L;
+		ys = slice(buffer, position, nodeCount * 8L).asDoubleBuffer();
+		position += nodeCount * 8L;
+		offsets = slice(buffer, position, (nodeCount + 1) * 4L).asIntBuffer();
+		position += (nodeCount + 1) * 4L;
+		targets = slice(buffer, position, edgeCount * 4L).asIntBuffer();
+		position += edgeCount * 4L;
+		seconds = slice(buffer, position, edgeCount * 4L).asFloatBuffer();
+
+		buildSnapIndex();
+	}
+
+	public static RoadGraph load(File file) throws IOException
+	{
+		if (file.getName().toLowerCase().endsWith(".csv"))
+		{
+			File compiled = new File(file.getPath().substring(0, file.getPath().length() - 4) + ".graph");
+			if (!compiled.exists() || compiled.lastModified() < file.lastModified())
+				compile(file, compiled);
+			file = compiled;
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			return new RoadGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	public double getX(int node)
+	{
+		return xs.get(node);
+	}
+
+	public double getY(int node)
+	{
+		return ys.get(node);
+	}
+
+	public int getFirstEdge(int node)
+	{
+		return offsets.get(node);
+	}
+
+	public int getEndEdge(int node)
+	{
+		return offsets.get(node + 1);
+	}
+
+	public int getTarget(int edge)
+	{
+		return targets.get(edge);
+	}
+
+	public float getSeconds(int edge)
+	{
+		return seconds.get(edge);
+	}
+
+	/**
+	 * Returns the node closest to the point, or -1 if the graph is empty.
+	 */
+	public int nearestNode(double x, double y)
+	{
+		if (nodeCount == 0)
+			return -1;
+
+		int column = clamp((int) ((x - minX) / cellSize), columns);
+		int row = clamp((int) ((y - minY) / cellSize), rows);
+		int best = -1;
+		double bestDistance = Double.MAX_VALUE;
+		for (int ring = 0; ring <= Math.max(columns, rows); ring++)
+		{
+			for (int r = row - ring; r <= row + ring; r++)
+			{
+				if (r < 0 || r >= rows)
+					continue;
+				for (int c = column - ring; c <= column + ring; c++)
+				{
+					if (c < 0 || c >= columns || (Math.abs(r - row) != ring && Math.abs(c - column) != ring))
+						continue;
+					int cell = r * columns + c;
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++)
+					{
+						int node = cellNodes[i];
+						double dx = xs.get(node) - x;
+						double dy = ys.get(node) - y;
+						double distance = dx * dx + dy * dy;
+						if (distance < bestDistance)
+						{
+							bestDistance = distance;
+							best = node;
+						}
+					}
+				}
+			}
+			// every cell that could still hold a closer node has been searched
+			if (best >= 0 && ring * cellSize >= Math.sqrt(bestDistance))
+				break;
+		}
+		return best;
+	}
+
+	private void buildSnapIndex()
+	{
+		minX = Double.MAX_VALUE;
+		minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < nodeCount; i++)
+		{
+			minX = Math.min(minX, xs.get(i));
+			minY = Math.min(minY, ys.get(i));
+			maxX = Math.max(maxX, xs.get(i));
+			maxY = Math.max(maxY, ys.get(i));
+		}
+		int side = Math.max(1, (int) Math.sqrt(nodeCount / 4.0));
+		cellSize = Math.max(Math.max(maxX - minX, maxY - minY) / side, Double.MIN_NORMAL);
+		columns = Math.max(1, (int) ((maxX - minX) / cellSize) + 1);
+		rows = Math.max(1, (int) ((maxY - minY) / cellSize) + 1);
+
+		cellStart = new int[columns * rows + 1];
+		int[] nodeCells = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+		{
+			nodeCells[i] = clamp((int) ((ys.get(i) - minY) / cellSize), rows) * columns + clamp((int) ((xs.get(i) - minX) / cellSize), columns);
+			cellStart[nodeCells[i] + 1]++;
+		}
+		for (int i = 0; i < columns * rows; i++)
+			cellStart[i + 1] += cellStart[i];
+		int[] fill = new int[columns * rows];
+		cellNodes = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+			cellNodes[cellStart[nodeCells[i]] + fill[nodeCells[i]]++] = i;
+	}
+
+	private static int clamp(int value, int size)
+	{
+		return (value < 0) ? 0 : (value >= size) ? size - 1 : value;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, long position, long length)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.position((int) position);
+		view.limit((int) (position + length));
+		return view.slice();
+	}
+
+	/**
+	 * Converts a CSV edge list into the binary graph layout. Nodes are identified by their exact coordinates.
+	 */
+	public static void compile(File csv, File graph) throws IOException
+	{
+		Map<String, Integer> nodeIds = new HashMap<String, Integer>();
+		List<double[]> nodes = new ArrayList<double[]>();
+		List<int[]> edges = new ArrayList<int[]>();
+		List<Float> costs = new ArrayList<Float>();
+
+		try (BufferedReader reader = Files.newBufferedReader(csv.toPath(), StandardCharsets.UTF_8))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] columns = line.split(",");
+				if (columns.length < 6)
+					continue;
+				double fromX, fromY, toX, toY, length, speed;
+				try
+				{
+					fromX = Double.parseDouble(columns[0].trim());
+					fromY = Double.parseDouble(columns[1].trim());
+					toX = Double.parseDouble(columns[2].trim());
+					toY = Double.parseDouble(columns[3].trim());
+					length = Double.parseDouble(columns[4].trim());
+					speed = Double.parseDouble(columns[5].trim());
+				}
+				catch (NumberFormatException e)
+				{
+					// header or malformed row
+					continue;
+				}
+				if (speed <= 0)
+					continue;
+				boolean oneway = columns.length > 6 && Boolean.parseBoolean(columns[6].trim());
+
+				int from = nodeId(fromX, fromY, nodeIds, nodes);
+				int to = nodeId(toX, toY, nodeIds, nodes);
+				float cost = (float) (length / (speed / 3.6));
+				edges.add(new int[] { from, to });
+				costs.add(cost);
+				if (!oneway)
+				{
+					edges.add(new int[] { to, from });
+					costs.add(cost);
+				}
+			}
+		}
+
+		int nodeCount = nodes.size();
+		int edgeCount = edges.size();
+		int[] offsets = new int[nodeCount + 1];
+		for (int[] edge : edges)
+			offsets[edge[0] + 1]++;
+		for (int i = 0; i < nodeCount; i++)
+			offsets[i + 1] += offsets[i];
+		int[] fill = new int[nodeCount];
+		int[] targets = new int[edgeCount];
+		float[] seconds = new float[edgeCount];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			int[] edge = edges.get(i);
+			int slot = offsets[edge[0]] + fill[edge[0]]++;
+			targets[slot] = edge[1];
+			seconds[slot] = costs.get(i);
+		}
+
+		File temp = new File(graph.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(nodeCount);
+			out.writeInt(edgeCount);
+			for (double[] node : nodes)
+				out.writeDouble(node[0]);
+			for (double[] node : nodes)
+				out.writeDouble(node[1]);
+			for (int offset : offsets)
+				out.writeInt(offset);
+			for (int target : targets)
+				out.writeInt(target);
+			for (float cost : seconds)
+				out.writeFloat(cost);
+		}
+		Files.move(temp.toPath(), graph.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static int nodeId(double x, double y, Map<String, Integer> nodeIds, List<double[]> nodes)
+	{
+		String key = x + "," + y;
+		Integer id = nodeIds.get(key);
+		if (id == null)
+		{
+			id = nodes.size();
+			nodeIds.put(key, id);
+			nodes.add(new double[] { x, y });
+		}
+		return id;
+	}
+}
@@ -24,39 +24,52 @@
 
 package com.esri.geoevent.processor.serviceareacalculator;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.http.HttpHeaders;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpGet;
+import javax.management.JMException;
+
+import org.apache.http.Consts;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.message.BasicNameValuePair;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.type.TypeReference;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 
 import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.MultiVertexGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
 import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.DefaultGeoEventDefinition;
 import com.esri.ges.core.geoevent.FieldDefinition;
 import com.esri.ges.core.geoevent.FieldType;
 import com.esri.ges.core.geoevent.GeoEvent;
 import com.esri.ges.core.geoevent.GeoEventDefinition;
 import com.esri.ges.core.geoevent.GeoEventPropertyName;
-import com.esri.ges.core.http.GeoEventHttpClient;
 import com.esri.ges.core.http.GeoEventHttpClientService;
 import com.esri.ges.core.http.KeyValue;
 import com.esri.ges.core.validation.ValidationException;
@@ -66,82 +79,212 @@ import com.esri.ges.framework.i18n.BundleLoggerFactory;
 import com.esri.ges.manager.datastore.agsconnection.ArcGISServerConnectionManager;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManagerException;
+import com.esri.ges.messaging.EventDestination;
+import com.esri.ges.messaging.EventUpdatable;
 import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.Messaging;
 import com.esri.ges.messaging.MessagingException;
 import com.esri.ges.processor.GeoEventProcessorBase;
 import com.esri.ges.processor.GeoEventProcessorDefinition;
-import com.esri.ges.util.GeometryUtil;
 import com.esri.ges.util.Validator;
 
-public class ServiceAreaCalculator extends GeoEventProcessorBase
+public class ServiceAreaCalculator extends GeoEventProcessorBase implements GeoEventProducer, EventUpdatable
 {
 	final private static BundleLogger			LOGGER				= BundleLoggerFactory.getLogger(ServiceAreaCalculator.class);
-
-	final static Object[]									wkidPath			= new Object[] { "spatialReference", "wkid" };
-	final static Object[]									geometryPath	= new Object[] { "geometry" };
+	final private static long							REJECTION_LOG_INTERVAL_MILLIS	= 60000;
+	final private static ContentType			FORM_CONTENT_TYPE	= ContentType.create("application/x-www-form-urlencoded", Consts.UTF_8);
+	final private static int							MAX_PRECOMPUTE_POINTS	= 100000;
+	final private static int							APPROXIMATE_VERTEX_COUNT	= 64;
+	final private static Set<GeoEventPropertyName>	INHERITED_PROPERTIES	= EnumSet.of(GeoEventPropertyName.TYPE, GeoEventPropertyName.OWNER_ID, GeoEventPropertyName.OWNER_URI);
 
 	private String												serviceAreaSolverPath;
-	private int														driveTime;
+	private double[]											driveTimes;
+	private String												defaultBreaks;
 	private GeoEventHttpClientService			httpService;
+	private SolverHttpClient							httpClient;
 	private String												inputGeometryField;
 	private String												outputGeometryField;
+	private String[]											outputGeometryFields;
 	private boolean												overrideInputField;
 	private String												outputGEDName;
+	private Messaging											messaging;
 	private GeoEventCreator								geoEventCreator;
+	private GeoEventProducer							geoEventProducer;
 	private GeoEventDefinitionManager			geoEventDefinitionManager;
 	private ArcGISServerConnectionManager	agsConnectionManager;
 	private Map<String, String>						edMapper			= new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, OutputLayout>	outputLayouts	= new ConcurrentHashMap<String, OutputLayout>();
 	private String												naConnectionName;
 	private String												outputPolygonType;
+	private ExpiringCache<String, MapGeometry[]>	cache;
+	private double												cacheTolerance;
+	private TrackMovementFilter						movementFilter;
+	private AreaTileStore									tileStore;
+	private ResultLog											resultLog;
+	private MicroBatcher<PendingSolve>		batcher;
+	private InFlightDispatcher<GeoEvent>	dispatcher;
+	private OrderedEmitter<GeoEvent>			trackOrder;
+	private LocalServiceAreaSolver				localSolver;
+	private final SolverMetrics						metrics				= new SolverMetrics();
+	private SolverGuard										guard;
+	private long													solverWaitMillis;
+	private final AtomicLong							rejectionLoggedAt	= new AtomicLong();
+	private SolverEndpointPool						endpoints;
+	private int														solverRetries;
+	private ScheduledExecutorService			connectionRefresher;
+	private PolygonGeneralizer						generalizer;
+	private SingleFlight<String, MapGeometry[]>	flights;
+	private PartitionedExecutor						workers;
+	private CoverageAggregator						coverage;
+	private ScheduledExecutorService			coverageEmitter;
+	private String												coverageGEDName;
+	private GeoEventDefinition						coverageDefinition;
+	private ReachIndex										reachIndex;
+	private long													reachIndexTimeoutMillis;
+	private boolean												queryMode;
+	private double												queryDriveTime;
+	private FieldType											outputFieldType		= FieldType.Geometry;
+	private String												fallbackMode;
+	private double												fallbackSpeedKmh;
+	private long													timeSlotMillis;
+	private HotCellTracker								hotCells;
+	private int														presolveCount;
+	private long													presolveLeadMillis;
+	private int														presolveBatchSize;
+	private ScheduledExecutorService			presolver;
 
-	protected ServiceAreaCalculator(GeoEventProcessorDefinition definition, GeoEventHttpClientService httpService, GeoEventCreator geoEventCreator, GeoEventDefinitionManager geoEventDefinitionManager, ArcGISServerConnectionManager agsConnectionManager) throws ComponentException
+	protected ServiceAreaCalculator(GeoEventProcessorDefinition definition, GeoEventHttpClientService httpService, Messaging messaging, GeoEventDefinitionManager geoEventDefinitionManager, ArcGISServerConnectionManager agsConnectionManager) throws ComponentException
 	{
 		super(definition);
 		this.httpService = httpService;
-		this.geoEventCreator = geoEventCreator;
+		this.messaging = messaging;
+		this.geoEventCreator = messaging.createGeoEventCreator();
 		this.geoEventDefinitionManager = geoEventDefinitionManager;
 		this.agsConnectionManager = agsConnectionManager;
+
+		metrics.setCacheGauges(this::getCacheHits, this::getCacheMisses, () ->
+			{
+				ExpiringCache<String, MapGeometry[]> current = cache;
+				return (current != null) ? current.size() : 0;
+			});
+		metrics.setInFlightGauge(() ->
+			{
+				InFlightDispatcher<GeoEvent> current = dispatcher;
+				return (current != null) ? current.getInFlight() : 0;
+			});
+		metrics.setPendingBatchGauge(() ->
+			{
+				MicroBatcher<PendingSolve> current = batcher;
+				return (current != null) ? current.size() : 0;
+			});
+		metrics.setQueuedEventsGauge(() ->
+			{
+				PartitionedExecutor current = workers;
+				return (current != null) ? current.getQueued() : 0;
+			});
+		metrics.setResultLogGauge(() ->
+			{
+				ResultLog current = resultLog;
+				return (current != null) ? current.getDroppedCount() : 0;
+			});
+		metrics.setGuardGauges(() ->
+			{
+				SolverGuard current = guard;
+				return (current != null) ? current.getState().toString() : "";
+			}, () ->
+			{
+				SolverGuard current = guard;
+				return (current != null) ? current.getConcurrencyLimit() : 0;
+			});
 	}
 
 	@Override
 	public GeoEvent process(GeoEvent geoEvent) throws Exception
+	{
+		if (queryMode)
+			return queryReachableUnits(geoEvent);
+
+		PartitionedExecutor currentWorkers = workers;
+		if (currentWorkers != null)
+		{
+			try
+			{
+				currentWorkers.submit(geoEvent.getTrackId(), () ->
+					{
+						GeoEvent result = processEvent(geoEvent);
+						if (result != null)
+							sendQuietly(result);
+					});
+			}
+			catch (Exception e)
+			{
+				metrics.recordDroppedEvent();
+				LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+				LOGGER.info(e.getMessage(), e);
+			}
+			return null;
+		}
+		return processEvent(geoEvent);
+	}
+
+	/**
+	 * Processes the event on the current thread. Returns the event to send on, or <code>null</code> if it is sent later
+	 * or was dropped.
+	 */
+	private GeoEvent processEvent(GeoEvent geoEvent)
 	{
 		try
 		{
 			if (geoEvent.getField(inputGeometryField) instanceof MapGeometry)
 			{
+				// a bad location is dropped here, before it can fail the batch or request it would be solved with
+				if (!isFinitePoint((MapGeometry) geoEvent.getField(inputGeometryField)))
+					throw new ValidationException(LOGGER.translate("PROCESSOR_INPUT_LOCATION_ERROR"));
 				if (geoEvent != null && geoEventDefinitionManager != null)
 				{
-					Object obj = processGeometry(geoEvent, inputGeometryField);
-
-					if (overrideInputField)
-						geoEvent.setField(inputGeometryField, obj);
-					else
+					if (batcher != null)
 					{
-						FieldDefinition fd = geoEvent.getGeoEventDefinition().getFieldDefinition(outputGeometryField);
-						if (fd != null && fd.getType() != FieldType.Geometry)
-							throw new ValidationException(LOGGER.translate("PROCESSOR_OUTPUTFIELD_ERROR"));
+						MapGeometry point = (MapGeometry) geoEvent.getField(inputGeometryField);
+						long slot = getTimeSlot(geoEvent);
+						MapGeometry[] previous = (movementFilter != null) ? movementFilter.get(getTrackKey(geoEvent, slot), point) : null;
+						if (previous == null && tileStore != null)
+							previous = tileStore.get(point);
+						if (previous != null)
+							return emitInOrder(geoEvent, applyServiceArea(geoEvent, previous));
 
-						if (fd != null)
+						SingleFlight<String, MapGeometry[]> currentFlights = flights;
+						String cacheKey = (cache != null || currentFlights != null || resultLog != null) ? getCacheKey(point, slot) : null;
+						recordHotCell(cacheKey, point);
+						MapGeometry[] cached = (cache != null && cacheKey != null) ? cache.get(cacheKey) : null;
+						if (cached != null)
 						{
-							if (Validator.isEmpty(outputGEDName))
-							{
-								geoEvent.setField(outputGeometryField, obj);
-							}
-							else
-							{
-								GeoEventDefinition edOut = update(geoEvent.getGeoEventDefinition());
-								geoEvent = populateGeoEvent(geoEvent, edOut, null);
-								geoEvent.setField(outputGeometryField, obj);
-							}
+							if (movementFilter != null)
+								movementFilter.put(getTrackKey(geoEvent, slot), point, cached);
+							return emitInOrder(geoEvent, applyServiceArea(geoEvent, cached));
 						}
-						else
+
+						SingleFlight<String, MapGeometry[]>.Call call = (currentFlights != null && cacheKey != null) ? currentFlights.join(cacheKey) : null;
+						if (call != null && !call.isLeader())
 						{
-							GeoEventDefinition edOut = update(geoEvent.getGeoEventDefinition());
-							geoEvent = populateGeoEvent(geoEvent, edOut, obj);
+							metrics.recordCoalesced();
+							PendingSolve follower = createPendingSolve(geoEvent, point, slot, cacheKey, null);
+							call.whenComplete(areas -> settleAndSend(follower, areas));
+							return null;
 						}
+						batcher.add(createPendingSolve(geoEvent, point, slot, cacheKey, call));
+						return null;
 					}
-					return geoEvent;
+
+					if (dispatcher != null)
+					{
+						final GeoEvent pendingEvent = geoEvent;
+						dispatcher.submit(geoEvent.getTrackId(), () -> solveAndApply(pendingEvent), this::sendQuietly);
+						return null;
+					}
+
+					MapGeometry[] areas = processGeometry(geoEvent, inputGeometryField);
+					return applyServiceArea(geoEvent, areas);
 				}
 			}
 			else
@@ -149,335 +292,1710 @@ public class ServiceAreaCalculator extends GeoEventProcessorBase
 		}
 		catch (Exception e)
 		{
+			metrics.recordDroppedEvent();
 			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
 			LOGGER.info(e.getMessage(), e);
 		}
 		return null;
 	}
 
-	synchronized private void clearGeoEventDefinitionMapper()
+	private static boolean isFinitePoint(MapGeometry location)
 	{
-		if (!edMapper.isEmpty())
-		{
-			for (String guid : edMapper.values())
-			{
-				try
-				{
-					geoEventDefinitionManager.deleteGeoEventDefinition(guid);
-				}
-				catch (GeoEventDefinitionManagerException e)
-				{
-					LOGGER.warn("PROCESSOR_FAILED_TO_DELETE_GED", guid, e.getMessage());
-				}
-			}
-			edMapper.clear();
-		}
+		if (!(location.getGeometry() instanceof Point) || location.getGeometry().isEmpty())
+			return false;
+		Point point = (Point) location.getGeometry();
+		return Double.isFinite(point.getX()) && Double.isFinite(point.getY());
 	}
 
-	private GeoEvent populateGeoEvent(GeoEvent geoEvent, GeoEventDefinition edOut, Object outputGeometry) throws MessagingException
+	/**
+	 * Hands an event that needs no solve to its track's ordering chain, if track order is preserved, so that it is not
+	 * sent ahead of an earlier event of the track still waiting for its batch. Returns the event to send on otherwise.
+	 */
+	private GeoEvent emitInOrder(GeoEvent geoEvent, GeoEvent result)
 	{
-		GeoEvent outGeoEvent;
-		if (outputGeometry == null)
-			outGeoEvent = geoEventCreator.create(edOut.getGuid(), geoEvent.getAllFields());
-		else
-			outGeoEvent = geoEventCreator.create(edOut.getGuid(), new Object[] { geoEvent.getAllFields(), outputGeometry });
+		OrderedEmitter<GeoEvent> currentOrder = trackOrder;
+		if (currentOrder == null)
+			return result;
+		currentOrder.emit(geoEvent.getTrackId(), CompletableFuture.completedFuture(result), this::sendQuietly);
+		return null;
+	}
 
-		outGeoEvent.setProperty(GeoEventPropertyName.TYPE, geoEvent.getProperty(GeoEventPropertyName.TYPE));
-		outGeoEvent.setProperty(GeoEventPropertyName.OWNER_ID, geoEvent.getProperty(GeoEventPropertyName.OWNER_ID));
-		outGeoEvent.setProperty(GeoEventPropertyName.OWNER_URI, geoEvent.getProperty(GeoEventPropertyName.OWNER_URI));
+	/**
+	 * Creates the pending solve of an event and, if track order is preserved, takes its place in the track's ordering
+	 * chain.
+	 */
+	private PendingSolve createPendingSolve(GeoEvent geoEvent, MapGeometry point, long slot, String cacheKey, SingleFlight<String, MapGeometry[]>.Call call)
+	{
+		OrderedEmitter<GeoEvent> currentOrder = trackOrder;
+		CompletableFuture<GeoEvent> result = (currentOrder != null) ? new CompletableFuture<GeoEvent>() : null;
+		if (currentOrder != null)
+			currentOrder.emit(geoEvent.getTrackId(), result, this::sendQuietly);
+		return new PendingSolve(geoEvent, point, slot, cacheKey, call, result);
+	}
 
-		for (Map.Entry<GeoEventPropertyName, Object> property : geoEvent.getProperties())
+	/**
+	 * Writes the area of each break into its output geometry field and publishes the areas to the coverage and the
+	 * reach index.
+	 */
+	private GeoEvent applyServiceArea(GeoEvent geoEvent, MapGeometry[] areas) throws Exception
+	{
+		CoverageAggregator currentCoverage = coverage;
+		if (currentCoverage != null)
+			currentCoverage.update(geoEvent.getTrackId(), areaAt(areas, 0));
+		ReachIndex currentIndex = reachIndex;
+		if (currentIndex != null)
 		{
-			if (!outGeoEvent.hasProperty(property.getKey()))
-				outGeoEvent.setProperty(property.getKey(), property.getValue());
+			Object location = geoEvent.getField(inputGeometryField);
+			currentIndex.update(getId(), geoEvent.getTrackId(), (location instanceof MapGeometry) ? (MapGeometry) location : null, areas, driveTimes, reachIndexTimeoutMillis);
 		}
-
-		return outGeoEvent;
+		return applyOutputFields(geoEvent, areas);
 	}
 
-	synchronized private GeoEventDefinition update(GeoEventDefinition edIn) throws Exception
+	/**
+	 * Writes each value into its output field. Fields missing from the incoming definition are appended to it, in
+	 * value order.
+	 * <p>
+	 * A new event is created from a single flat field array laid out like the output definition, with the values
+	 * already in place. When no field is appended the incoming field array is handed to the new event as is and the
+	 * values are set afterwards.
+	 */
+	private GeoEvent applyOutputFields(GeoEvent geoEvent, Object[] values) throws Exception
 	{
-		FieldDefinition fd = edIn.getFieldDefinition(outputGeometryField);
-
-		GeoEventDefinition edOut = edMapper.containsKey(edIn.getGuid()) ? geoEventDefinitionManager.getGeoEventDefinition(edMapper.get(edIn.getGuid())) : null;
-		if (edOut == null)
+		OutputLayout layout = getOutputLayout(geoEvent.getGeoEventDefinition());
+		if (layout.output == null || layout.appendedBreaks.length == 0)
 		{
-			if (fd == null)
-			{
-				FieldDefinition newfd = new DefaultFieldDefinition(outputGeometryField, FieldType.Geometry);
-				edOut = edIn.augment(Arrays.asList(newfd));
-			}
-			else
-			{
-				edOut = (GeoEventDefinition) edIn.clone();
-			}
-
-			edOut.setOwner(getId());
+			GeoEvent outGeoEvent = (layout.output != null) ? populateGeoEvent(geoEvent, layout.output, geoEvent.getAllFields()) : geoEvent;
+			for (int i = 0; i < layout.setBreaks.length; i++)
+				outGeoEvent.setField(layout.setIndices[i], valueAt(values, layout.setBreaks[i]));
+			return outGeoEvent;
+		}
 
-			if (!outputGEDName.isEmpty())
-			{
-				edOut.setName(outputGEDName);
-				geoEventDefinitionManager.addTemporaryGeoEventDefinition(edOut, false);
-			}
-			else
-			{
-				geoEventDefinitionManager.addTemporaryGeoEventDefinition(edOut, true);
-			}
+		Object[] inputFields = geoEvent.getAllFields();
+		Object[] fields = new Object[layout.outputFieldCount];
+		System.arraycopy(inputFields, 0, fields, 0, Math.min(inputFields.length, layout.inputFieldCount));
+		for (int i = 0; i < layout.appendedBreaks.length; i++)
+			fields[layout.inputFieldCount + i] = valueAt(values, layout.appendedBreaks[i]);
+		for (int i = 0; i < layout.setBreaks.length; i++)
+			fields[layout.setIndices[i]] = valueAt(values, layout.setBreaks[i]);
+		return populateGeoEvent(geoEvent, layout.output, fields);
+	}
 
-			edMapper.put(edIn.getGuid(), edOut.getGuid());
-		}
+	private static MapGeometry areaAt(MapGeometry[] areas, int index)
+	{
+		return (areas != null && index < areas.length) ? areas[index] : null;
+	}
 
-		return edOut;
+	private static Object valueAt(Object[] values, int index)
+	{
+		return (values != null && index < values.length) ? values[index] : null;
 	}
 
-	@Override
-	public void afterPropertiesSet()
+	/**
+	 * Writes the TRACK_IDs of the units in the reach index that can reach the event's location, nearest first, into
+	 * the reachable units field.
+	 */
+	private GeoEvent queryReachableUnits(GeoEvent geoEvent)
 	{
-		super.afterPropertiesSet();
-		inputGeometryField = hasProperty("inputGeometryField") ? getProperty("inputGeometryField").getValueAsString().trim() : "";
-		overrideInputField = Boolean.parseBoolean(getProperty("replaceGeometry").getValueAsString());
-		if (overrideInputField)
+		try
 		{
-			geoEventMutator = true;
-			outputGeometryField = inputGeometryField;
+			Object location = geoEvent.getField(inputGeometryField);
+			if (!(location instanceof MapGeometry))
+				throw new ValidationException(LOGGER.translate("PROCESSOR_INPUTFIELD_ERROR"));
+			ReachIndex currentIndex = reachIndex;
+			if (currentIndex == null)
+				throw new ValidationException(LOGGER.translate("QUERY_NO_INDEX_ERROR"));
+			List<String> units = currentIndex.query((MapGeometry) location, queryDriveTime);
+			return applyOutputFields(geoEvent, new Object[] { String.join(",", units) });
 		}
-		else
+		catch (Exception e)
 		{
-			outputGeometryField = getProperty("outputGeometryField").getValueAsString().trim();
-			outputGEDName = getProperty("outputGEDName").getValueAsString().trim();
-			if (outputGEDName.isEmpty())
-				geoEventMutator = true;
-			else
-				geoEventMutator = false;
+			metrics.recordDroppedEvent();
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
 		}
-
-		naConnectionName = getProperty(ServiceAreaCalculatorDefinition.NA_CONNECTION_PROPERTY).getValueAsString();
-		serviceAreaSolverPath = getProperty(ServiceAreaCalculatorDefinition.NA_PATH_PROPERTY).getValueAsString();
-		outputPolygonType = getProperty(ServiceAreaCalculatorDefinition.OUTPUT_POLYGON_TYPE_PROPERTY).getValueAsString();
-		driveTime = Integer.parseInt(getProperty(ServiceAreaCalculatorDefinition.DRIVE_TIME_PROPERTY).getValueAsString());
+		return null;
 	}
 
-	protected Object processGeometry(GeoEvent geoevent, String geometryField) throws Exception
+	private GeoEvent solveAndApply(GeoEvent geoEvent)
 	{
-		MapGeometry geomout = null;
 		try
 		{
-			MapGeometry geom = (MapGeometry) geoevent.getField(geometryField);
-
-			geomout = getAreaAroundPoint(geom);
+			return applyServiceArea(geoEvent, processGeometry(geoEvent, inputGeometryField));
 		}
 		catch (Exception e)
 		{
-			if (geoevent.getTrackId() == null)
-				throw new Exception(LOGGER.translate("SERVICE_AREA_UNABLE_ERROR1", e.getMessage()), e);
-			else
-				throw new Exception(LOGGER.translate("SERVICE_AREA_UNABLE_ERROR2", geoevent.getTrackId(), e.getMessage()), e);
+			metrics.recordDroppedEvent();
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
 		}
-		return geomout;
+		return null;
 	}
 
-	//Handle the incompatibility with 10.5.0 Patch 1 release
-	public Collection<KeyValue> getDefaultParamsForRequest(ArcGISServerConnection agsConnection)
+	private void sendQuietly(GeoEvent geoEvent)
 	{
-	  Collection<KeyValue> params = new ArrayList<KeyValue>();
-	  params.add(new KeyValue("f", "json"));
-	  String token = agsConnection.getDecryptedToken();
-	  if (token != null)
-	    params.add(new KeyValue("token", token));
-
-	  return params;
-	} 
-	
-	public HttpPost createPostRequest(URL url, Collection<KeyValue> parameters) throws IOException
-  {
-    List<NameValuePair> formParams = new ArrayList<NameValuePair>();
-    if (parameters != null)
-    {
-      for (KeyValue parameter : parameters)
-      {
-        formParams.add(new BasicNameValuePair(parameter.getKey(), parameter.getValue()));
-        LOGGER.debug("HTTP_ADDING_PARAM", parameter.getKey(), parameter.getValue());
-      }
-    }
-    UrlEncodedFormEntity entity = new UrlEncodedFormEntity(formParams, "UTF-8");
-
-    HttpPost httpPost;
-    try
-    {
-      httpPost = new HttpPost(url.toURI());
-    }
-    catch (URISyntaxException e)
-    {
-      throw new RuntimeException(e);
-    }
-    httpPost.setEntity(entity);
-    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded");
-    httpPost.setHeader("charset", "utf-8");
-
-    return httpPost;
-  }
+		try
+		{
+			send(geoEvent);
+		}
+		catch (MessagingException | RuntimeException e)
+		{
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+	}
 
-	public MapGeometry getAreaAroundPoint(MapGeometry point)
+	/**
+	 * Solves a batch of pending events with a single multi-facility request per time slot and sends the results on.
+	 */
+	private void solveBatch(List<PendingSolve> batch)
 	{
-		ArcGISServerConnection agsConnection = agsConnectionManager.getArcGISServerConnection(naConnectionName);
+		Map<Long, List<PendingSolve>> slots = new LinkedHashMap<Long, List<PendingSolve>>();
+		for (PendingSolve pending : batch)
+			slots.computeIfAbsent(pending.slot, slot -> new ArrayList<PendingSolve>()).add(pending);
+		for (Map.Entry<Long, List<PendingSolve>> slot : slots.entrySet())
+			solveSlot(slot.getValue(), slot.getKey());
+	}
 
-		Collection<KeyValue> params = new ArrayList<KeyValue>();
-		params.addAll(getDefaultParamsForRequest(agsConnection));
-    //params.addAll(agsConnection.getDefaultParamsForRequest());
-		params.add(new KeyValue("facilities", generateFacilitiesJson(point)));
-		params.add(new KeyValue("defaultBreaks", (new Integer(driveTime)).toString()));
-		params.add(new KeyValue("travelDirection", "esriNATravelDirectionFromFacility"));
+	private void solveSlot(List<PendingSolve> batch, long slot)
+	{
+		MapGeometry[][] areas = null;
+		try
+		{
+			List<MapGeometry> points = new ArrayList<MapGeometry>(batch.size());
+			for (PendingSolve pending : batch)
+				points.add(pending.point);
 
-		if (!Validator.isEmpty(outputPolygonType))
-			params.add(new KeyValue("outputPolygons", outputPolygonType));
-
-		try (GeoEventHttpClient http = httpService.createNewClient())
-		{
-			StringBuffer urlString = new StringBuffer();
-			urlString.append(agsConnection.getUrl().toExternalForm());
-			urlString.append(serviceAreaSolverPath);
-
-			URL url = new URL(urlString.toString());
-			//HttpPost postRequest = http.createPostRequest(url, params);
-      HttpPost postRequest = createPostRequest(url, params);
-			postRequest.addHeader("Referer", agsConnection.getReferer());
-			String responseString = http.executeAndReturnBody(postRequest, GeoEventHttpClient.DEFAULT_TIMEOUT);
-			/*
-			HttpGet getRequest = http.createGetRequest(url, params);
-			getRequest.addHeader("Referer", agsConnection.getReferer());
-      String responseString = http.executeAndReturnBody(getRequest, GeoEventHttpClient.DEFAULT_TIMEOUT);
-			*/
-			return parseAreaSolverReply(responseString);
+			areas = getAreasAroundPoints(points, slot);
 		}
 		catch (Exception e)
 		{
-			LOGGER.debug("SERVICE_AREA_UNABLE_ERROR1", e.getMessage());
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
 			LOGGER.info(e.getMessage(), e);
 		}
+		for (int i = 0; i < batch.size(); i++)
+		{
+			PendingSolve pending = batch.get(i);
+			MapGeometry[] pendingAreas = (areas != null) ? areas[i] : null;
+			// hand the result to the events waiting for the same key before falling back, which each of them does on its own
+			if (pending.call != null)
+				pending.call.complete(pendingAreas);
+			settleAndSend(pending, pendingAreas);
+		}
+	}
 
-		return null;
+	/**
+	 * Keeps freshly solved areas in the cache and the result log.
+	 */
+	private void cacheAreas(String cacheKey, MapGeometry[] areas)
+	{
+		if (cacheKey == null)
+			return;
+		if (cache != null)
+			cache.put(cacheKey, areas);
+		ResultLog currentLog = resultLog;
+		if (currentLog != null)
+			currentLog.append(cacheKey, areas);
 	}
 
-	private MapGeometry parseAreaSolverReply(String reply)
+	/**
+	 * Caches the areas solved for a pending event, or falls back if there are none, and sends the event on, or hands it
+	 * to its track's ordering chain.
+	 */
+	private void settleAndSend(PendingSolve pending, MapGeometry[] areas)
 	{
+		GeoEvent result = null;
 		try
 		{
-			JsonNode response = (new ObjectMapper()).readTree(reply);
-			JsonNode saPolygon = response.get("saPolygons");
-			if (saPolygon == null)
-			{
-				LOGGER.error("SERVICE_AREA_NO_SAPOLYGON", reply);
-				return null;
-			}
-
-			List<MapGeometry> polygons = getGeometriesFromNAReply(saPolygon);
-			if (polygons.size() > 1)
+			if (isComplete(areas))
 			{
-				LOGGER.info("SERVICE_AREA_MULTIPLE_RESULT ", reply);
+				cacheAreas(pending.cacheKey, areas);
+				if (movementFilter != null)
+					movementFilter.put(getTrackKey(pending.geoEvent, pending.slot), pending.point, areas);
 			}
-			if (polygons.size() == 0)
+			else
 			{
-				LOGGER.error("SERVICE_AREA_NO_GEOMETRY_IN_RESULT", reply);
-				return null;
+				MapGeometry[] fallback = getFallbackAreas(pending.point, pending.cacheKey);
+				if (fallback != null)
+					areas = fallback;
 			}
-
-			return polygons.get(0);
+			result = applyServiceArea(pending.geoEvent, areas);
+			if (pending.result == null)
+				send(result);
 		}
 		catch (Exception e)
 		{
-			throw new RuntimeException(LOGGER.translate("SERVICE_AREA_UNABLE_ERROR1", e.getMessage()), e);
+			metrics.recordDroppedEvent();
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+		finally
+		{
+			// completed even when the event is dropped, so that the events of the track behind it are not held up
+			if (pending.result != null)
+				pending.result.complete(result);
 		}
 	}
 
-	private List<MapGeometry> getGeometriesFromNAReply(JsonNode jsonNode) throws Exception
+	/**
+	 * Sends the combined coverage of the active tracks as a single event.
+	 */
+	private void sendCoverage()
 	{
-		if (jsonNode == null)
+		CoverageAggregator currentCoverage = coverage;
+		if (currentCoverage == null)
+			return;
+		try
 		{
-			LOGGER.error("SERVICE_AREA_NO_ROUTES_IN_RESULT");
-			return null;
+			CoverageAggregator.Coverage current = currentCoverage.getCoverage();
+			GeoEventDefinition definition = getCoverageDefinition();
+			send(geoEventCreator.create(definition.getGuid(), new Object[] { coverageGEDName, current.getTrackCount(), new Date(), current.getArea() }));
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("SERVICE_AREA_COVERAGE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
 		}
+	}
 
-		int wkid = getNodeFollowingPath(jsonNode, wkidPath).asInt();
-		String wkidStr = Integer.toString(wkid);
-		String geometryString;
-		List<MapGeometry> retList = new ArrayList<MapGeometry>();
-		MapGeometry mapGeometry;
-		for (JsonNode feature : getNodeFollowingPath(jsonNode, new Object[] { "features" }))
+	synchronized private GeoEventDefinition getCoverageDefinition() throws Exception
+	{
+		if (coverageDefinition == null)
 		{
-			geometryString = geometryStringFromJsonNode(getNodeFollowingPath(feature, geometryPath), wkidStr);
-			mapGeometry = GeometryUtil.fromJson(geometryString);
-			retList.add(mapGeometry);
+			GeoEventDefinition definition = new DefaultGeoEventDefinition();
+			definition.setName(coverageGEDName);
+			definition.setOwner(getId());
+			List<FieldDefinition> fieldDefinitions = new ArrayList<FieldDefinition>();
+			fieldDefinitions.add(new DefaultFieldDefinition("TRACK_ID", FieldType.String, "TRACK_ID"));
+			fieldDefinitions.add(new DefaultFieldDefinition("UNIT_COUNT", FieldType.Integer));
+			fieldDefinitions.add(new DefaultFieldDefinition("TIME_START", FieldType.Date, "TIME_START"));
+			fieldDefinitions.add(new DefaultFieldDefinition("GEOMETRY", FieldType.Geometry, "GEOMETRY"));
+			definition.setFieldDefinitions(fieldDefinitions);
+			geoEventDefinitionManager.addTemporaryGeoEventDefinition(definition, false);
+			coverageDefinition = definition;
 		}
+		return coverageDefinition;
+	}
 
-		return retList;
+	synchronized private void clearGeoEventDefinitionMapper()
+	{
+		outputLayouts.clear();
+		if (coverageDefinition != null)
+		{
+			deleteGeoEventDefinition(coverageDefinition.getGuid());
+			coverageDefinition = null;
+		}
+		if (!edMapper.isEmpty())
+		{
+			for (String guid : edMapper.values())
+				deleteGeoEventDefinition(guid);
+			edMapper.clear();
+		}
 	}
 
-	private JsonNode getNodeFollowingPath(JsonNode jsonNode, Object[] nodePath)
+	private void deleteGeoEventDefinition(String guid)
 	{
-		for (Object property : nodePath)
+		try
 		{
-			if (property instanceof String)
-			{
-				jsonNode = jsonNode.get((String) property);
-			}
-			else if (property instanceof Integer)
-			{
-				Integer index = (Integer) property;
-				jsonNode = jsonNode.get(index);
-			}
-			if (jsonNode == null)
-			{
-				break;
-			}
+			geoEventDefinitionManager.deleteGeoEventDefinition(guid);
+		}
+		catch (GeoEventDefinitionManagerException e)
+		{
+			LOGGER.warn("PROCESSOR_FAILED_TO_DELETE_GED", guid, e.getMessage());
 		}
-		return jsonNode;
 	}
 
-	private String geometryStringFromJsonNode(JsonNode geometry, String outSR)
+	/**
+	 * Creates the output event from fields laid out like the output definition and copies the properties of the
+	 * incoming event in a single pass. TYPE, OWNER_ID and OWNER_URI always come from the incoming event; other
+	 * properties only where the new event has none.
+	 */
+	private GeoEvent populateGeoEvent(GeoEvent geoEvent, GeoEventDefinition edOut, Object[] fields) throws MessagingException
 	{
-		String geometryString = geometry.toString();
-		return geometryString.substring(0, geometryString.length() - 1) + ",\"spatialReference\":{\"wkid\":" + outSR + "}}";
+		GeoEvent outGeoEvent = geoEventCreator.create(edOut.getGuid(), fields);
+		for (Map.Entry<GeoEventPropertyName, Object> property : geoEvent.getProperties())
+		{
+			GeoEventPropertyName name = property.getKey();
+			if (INHERITED_PROPERTIES.contains(name) || !outGeoEvent.hasProperty(name))
+				outGeoEvent.setProperty(name, property.getValue());
+		}
+		return outGeoEvent;
 	}
 
-	private String generateFacilitiesJson(MapGeometry point)
+	/**
+	 * Returns the output layout of an incoming definition, creating (and registering the output definition of) it the
+	 * first time the definition is seen. A layout is reused without locking for as long as the incoming definition is
+	 * the same object or has the same fields; a changed definition gets a new layout and its old output definition is
+	 * deleted.
+	 */
+	private OutputLayout getOutputLayout(GeoEventDefinition edIn) throws Exception
 	{
-		StringBuffer sb = new StringBuffer();
-		sb.append("{\"type\":\"features\",\"features\":[{\"geometry\":");
-		sb.append(removeZFromGeom(GeometryUtil.toJson(point)));
-		sb.append("}]}");
-		return sb.toString();
+		OutputLayout layout = outputLayouts.get(edIn.getGuid());
+		if (layout != null)
+		{
+			if (layout.input == edIn || sameFields(layout.input, edIn))
+				return layout;
+			if (outputLayouts.remove(edIn.getGuid(), layout) && layout.output != null)
+			{
+				edMapper.remove(edIn.getGuid(), layout.output.getGuid());
+				deleteGeoEventDefinition(layout.output.getGuid());
+			}
+		}
+
+		try
+		{
+			return outputLayouts.computeIfAbsent(edIn.getGuid(), guid -> createOutputLayout(edIn));
+		}
+		catch (LayoutCreationException e)
+		{
+			throw (Exception) e.getCause();
+		}
 	}
 
-	private String removeZFromGeom(String geomString)
+	private OutputLayout createOutputLayout(GeoEventDefinition edIn)
 	{
-		geomString = new String(geomString);
-		JsonFactory factory = new JsonFactory();
-		ObjectMapper mapper = new ObjectMapper(factory);
-		JsonParser parser;
 		try
 		{
-			parser = factory.createJsonParser(geomString.getBytes());
-			TypeReference<HashMap<String, Object>> typeRef = new TypeReference<HashMap<String, Object>>() { };
-			HashMap<String, Object> o = mapper.readValue(parser, typeRef);
-			if (o.containsKey("z"))
+			List<FieldDefinition> newfds = new ArrayList<FieldDefinition>();
+			for (String field : outputGeometryFields)
+			{
+				FieldDefinition fd = edIn.getFieldDefinition(field);
+				if (fd == null)
+					newfds.add(new DefaultFieldDefinition(field, outputFieldType));
+				else if (fd.getType() != outputFieldType)
+					throw new ValidationException(LOGGER.translate((outputFieldType == FieldType.Geometry) ? "PROCESSOR_OUTPUTFIELD_ERROR" : "QUERY_OUTPUTFIELD_ERROR"));
+			}
+
+			if (newfds.isEmpty() && Validator.isEmpty(outputGEDName))
+				return new OutputLayout(edIn, null, outputGeometryFields);
+
+			GeoEventDefinition edOut;
+			if (!newfds.isEmpty())
+			{
+				edOut = edIn.augment(newfds);
+			}
+			else
+			{
+				edOut = (GeoEventDefinition) edIn.clone();
+			}
+
+			edOut.setOwner(getId());
+
+			if (!outputGEDName.isEmpty())
+			{
+				edOut.setName(outputGEDName);
+				geoEventDefinitionManager.addTemporaryGeoEventDefinition(edOut, false);
+			}
+			else
 			{
-				o.remove("z");
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				mapper.writeValue(baos, o);
-				geomString = baos.toString();
+				geoEventDefinitionManager.addTemporaryGeoEventDefinition(edOut, true);
 			}
+
+			edMapper.put(edIn.getGuid(), edOut.getGuid());
+			return new OutputLayout(edIn, edOut, outputGeometryFields);
 		}
 		catch (Exception e)
 		{
-			throw new RuntimeException(LOGGER.translate("SERVICE_AREA_ERROR_REMOVING_Z", e.getMessage()), e);
+			throw new LayoutCreationException(e);
+		}
+	}
+
+	private static boolean sameFields(GeoEventDefinition a, GeoEventDefinition b)
+	{
+		List<FieldDefinition> fieldsA = a.getFieldDefinitions();
+		List<FieldDefinition> fieldsB = b.getFieldDefinitions();
+		if (fieldsA.size() != fieldsB.size())
+			return false;
+		for (int i = 0; i < fieldsA.size(); i++)
+		{
+			if (!fieldsA.get(i).getName().equals(fieldsB.get(i).getName()) || fieldsA.get(i).getType() != fieldsB.get(i).getType())
+				return false;
 		}
-		return geomString;
+		return true;
 	}
 
 	@Override
-	public void shutdown()
+	public void afterPropertiesSet()
 	{
-		super.shutdown();
+		// finish the queued events with the previous configuration before any of it is replaced
+		stopWorkers();
+		closeTileStore();
+		closeResultLog();
+		super.afterPropertiesSet();
+		// the output fields may change, so the output definitions of the previous configuration no longer apply
 		clearGeoEventDefinitionMapper();
+		inputGeometryField = hasProperty("inputGeometryField") ? getProperty("inputGeometryField").getValueAsString().trim() : "";
+		overrideInputField = Boolean.parseBoolean(getProperty("replaceGeometry").getValueAsString());
+		if (overrideInputField)
+		{
+			geoEventMutator = true;
+			outputGeometryField = inputGeometryField;
+			outputGEDName = "";
+		}
+		else
+		{
+			outputGeometryField = getProperty("outputGeometryField").getValueAsString().trim();
+			outputGEDName = getProperty("outputGEDName").getValueAsString().trim();
+			if (outputGEDName.isEmpty())
+				geoEventMutator = true;
+			else
+				geoEventMutator = false;
+		}
+
+		naConnectionName = getProperty(ServiceAreaCalculatorDefinition.NA_CONNECTION_PROPERTY).getValueAsString();
+		serviceAreaSolverPath = getProperty(ServiceAreaCalculatorDefinition.NA_PATH_PROPERTY).getValueAsString();
+		outputPolygonType = getProperty(ServiceAreaCalculatorDefinition.OUTPUT_POLYGON_TYPE_PROPERTY).getValueAsString();
+		driveTimes = parseDriveTimes(getProperty(ServiceAreaCalculatorDefinition.DRIVE_TIME_PROPERTY).getValueAsString());
+		StringBuilder breaks = new StringBuilder();
+		for (double driveTime : driveTimes)
+			breaks.append((breaks.length() > 0) ? "," : "").append(formatBreak(driveTime));
+		defaultBreaks = breaks.toString();
+		outputGeometryFields = getOutputGeometryFields(outputGeometryField, getStringProperty(ServiceAreaCalculatorDefinition.ADDITIONAL_OUTPUT_FIELDS_PROPERTY, ""), driveTimes.length);
+		outputFieldType = FieldType.Geometry;
+
+		queryMode = ServiceAreaCalculatorDefinition.PROCESSOR_MODE_QUERY.equals(getStringProperty(ServiceAreaCalculatorDefinition.PROCESSOR_MODE_PROPERTY, ServiceAreaCalculatorDefinition.PROCESSOR_MODE_CALCULATE));
+		if (queryMode)
+		{
+			// the reachable units are written to a String field; the incoming geometry is never replaced
+			outputGeometryFields = new String[] { getStringProperty(ServiceAreaCalculatorDefinition.QUERY_OUTPUT_FIELD_PROPERTY, "REACHABLE_UNITS").trim() };
+			outputFieldType = FieldType.String;
+			outputGEDName = getProperty("outputGEDName").getValueAsString().trim();
+			geoEventMutator = outputGEDName.isEmpty();
+			queryDriveTime = getDoubleProperty(ServiceAreaCalculatorDefinition.QUERY_DRIVE_TIME_PROPERTY, 0.0);
+		}
+		releaseReachIndex();
+		String reachIndexName = getStringProperty(ServiceAreaCalculatorDefinition.REACH_INDEX_PROPERTY, "").trim();
+		reachIndexTimeoutMillis = getIntProperty(ServiceAreaCalculatorDefinition.REACH_INDEX_TIMEOUT_PROPERTY, 300) * 1000L;
+		if (!reachIndexName.isEmpty())
+			reachIndex = ReachIndex.acquire(reachIndexName);
+
+		int cacheSize = getIntProperty(ServiceAreaCalculatorDefinition.CACHE_SIZE_PROPERTY, 0);
+		cacheTolerance = getDoubleProperty(ServiceAreaCalculatorDefinition.CACHE_TOLERANCE_PROPERTY, 0.0);
+		int cacheTimeToLive = getIntProperty(ServiceAreaCalculatorDefinition.CACHE_TTL_PROPERTY, 0);
+		cache = (cacheSize > 0) ? new ExpiringCache<String, MapGeometry[]>(cacheSize, cacheTimeToLive * 1000L) : null;
+		flights = getBooleanProperty(ServiceAreaCalculatorDefinition.COALESCE_PROPERTY, true) ? new SingleFlight<String, MapGeometry[]>() : null;
+
+		double minimumMoveDistance = getDoubleProperty(ServiceAreaCalculatorDefinition.MIN_MOVE_DISTANCE_PROPERTY, 0.0);
+		int trackCacheSize = getIntProperty(ServiceAreaCalculatorDefinition.TRACK_CACHE_SIZE_PROPERTY, 10000);
+		int trackMaxAge = getIntProperty(ServiceAreaCalculatorDefinition.TRACK_MAX_AGE_PROPERTY, 60);
+		movementFilter = (minimumMoveDistance > 0 && trackCacheSize > 0) ? new TrackMovementFilter(trackCacheSize, trackMaxAge * 1000L, minimumMoveDistance) : null;
+
+		localSolver = null;
+		if (ServiceAreaCalculatorDefinition.SOLVER_BACKEND_LOCAL.equals(getStringProperty(ServiceAreaCalculatorDefinition.SOLVER_BACKEND_PROPERTY, ServiceAreaCalculatorDefinition.SOLVER_BACKEND_NASERVER)))
+		{
+			String graphFile = getStringProperty(ServiceAreaCalculatorDefinition.LOCAL_GRAPH_FILE_PROPERTY, "");
+			try
+			{
+				RoadGraph graph = RoadGraph.load(new File(graphFile));
+				localSolver = new LocalServiceAreaSolver(graph, getDoubleProperty(ServiceAreaCalculatorDefinition.LOCAL_BUFFER_DISTANCE_PROPERTY, 0.0005));
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("SERVICE_AREA_LOCAL_GRAPH_ERROR", graphFile, e.getMessage());
+				LOGGER.info(e.getMessage(), e);
+			}
+		}
+
+		int maxConnectionsPerRoute = Math.max(1, getIntProperty(ServiceAreaCalculatorDefinition.MAX_CONNECTIONS_PER_ROUTE_PROPERTY, 20));
+		int requestTimeout = getIntProperty(ServiceAreaCalculatorDefinition.REQUEST_TIMEOUT_PROPERTY, 30);
+		httpClient = new SolverHttpClient(httpService, requestTimeout * 1000);
+
+		List<String> connectionNames = new ArrayList<String>();
+		connectionNames.add(naConnectionName);
+		for (String name : getStringProperty(ServiceAreaCalculatorDefinition.ADDITIONAL_CONNECTIONS_PROPERTY, "").split(","))
+		{
+			if (!name.trim().isEmpty() && !connectionNames.contains(name.trim()))
+				connectionNames.add(name.trim());
+		}
+		boolean latencyWeighted = ServiceAreaCalculatorDefinition.LOAD_BALANCING_LATENCY_WEIGHTED.equals(getStringProperty(ServiceAreaCalculatorDefinition.LOAD_BALANCING_PROPERTY, ServiceAreaCalculatorDefinition.LOAD_BALANCING_LEAST_OUTSTANDING));
+		endpoints = new SolverEndpointPool(connectionNames, latencyWeighted, getIntProperty(ServiceAreaCalculatorDefinition.EJECTION_SECONDS_PROPERTY, 30) * 1000L, maxConnectionsPerRoute);
+		solverWaitMillis = requestTimeout * 1000L;
+
+		double maxRequestsPerSecond = getDoubleProperty(ServiceAreaCalculatorDefinition.MAX_REQUESTS_PER_SECOND_PROPERTY, 0.0);
+		int failureThreshold = getIntProperty(ServiceAreaCalculatorDefinition.BREAKER_FAILURE_THRESHOLD_PROPERTY, 0);
+		int breakerOpen = getIntProperty(ServiceAreaCalculatorDefinition.BREAKER_OPEN_PROPERTY, 30);
+		int targetLatency = getIntProperty(ServiceAreaCalculatorDefinition.TARGET_LATENCY_PROPERTY, 0);
+		if (maxRequestsPerSecond > 0 || failureThreshold > 0 || targetLatency > 0)
+			guard = new SolverGuard(maxRequestsPerSecond, failureThreshold, breakerOpen * 1000L, targetLatency, maxConnectionsPerRoute * connectionNames.size());
+		else
+			guard = null;
+		solverRetries = Math.max(0, Math.min(getIntProperty(ServiceAreaCalculatorDefinition.SOLVER_RETRIES_PROPERTY, 1), connectionNames.size() - 1));
+		int connectionRefresh = getIntProperty(ServiceAreaCalculatorDefinition.CONNECTION_REFRESH_PROPERTY, 300);
+		if (localSolver == null && connectionRefresh > 0)
+		{
+			connectionRefresher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ServiceAreaCalculator-" + getId() + "-connections"));
+			connectionRefresher.scheduleWithFixedDelay(this::refreshConnections, 0, connectionRefresh, TimeUnit.SECONDS);
+		}
+		fallbackMode = getStringProperty(ServiceAreaCalculatorDefinition.FALLBACK_PROPERTY, ServiceAreaCalculatorDefinition.FALLBACK_NONE);
+		fallbackSpeedKmh = getDoubleProperty(ServiceAreaCalculatorDefinition.FALLBACK_SPEED_PROPERTY, 30.0);
+
+		double generalizeTolerance = getDoubleProperty(ServiceAreaCalculatorDefinition.GENERALIZE_TOLERANCE_PROPERTY, 0.0);
+		double quantum = getDoubleProperty(ServiceAreaCalculatorDefinition.QUANTIZE_PROPERTY, 0.0);
+		if (generalizeTolerance > 0 || quantum > 0)
+			generalizer = new PolygonGeneralizer(generalizeTolerance, quantum, getBooleanProperty(ServiceAreaCalculatorDefinition.PRESERVE_TOPOLOGY_PROPERTY, false));
+		else
+			generalizer = null;
+
+		boolean preserveTrackOrder = getBooleanProperty(ServiceAreaCalculatorDefinition.PRESERVE_TRACK_ORDER_PROPERTY, true);
+		if (getBooleanProperty(ServiceAreaCalculatorDefinition.ASYNC_PROPERTY, false))
+		{
+			int maxInFlight = Math.max(1, getIntProperty(ServiceAreaCalculatorDefinition.MAX_IN_FLIGHT_PROPERTY, 8));
+			dispatcher = new InFlightDispatcher<GeoEvent>("ServiceAreaCalculator-" + getId() + "-solve", maxInFlight, preserveTrackOrder);
+		}
+
+		int batchSize = getIntProperty(ServiceAreaCalculatorDefinition.BATCH_SIZE_PROPERTY, 1);
+		long batchWindow = getIntProperty(ServiceAreaCalculatorDefinition.BATCH_WINDOW_PROPERTY, 100);
+		if (batchSize > 1 && batchWindow > 0)
+			batcher = new MicroBatcher<PendingSolve>("ServiceAreaCalculator-" + getId() + "-batch", batchSize, batchWindow, (dispatcher != null) ? this::dispatchBatch : this::solveBatch);
+		// events answered without a solve would otherwise overtake earlier events of their track waiting in a batch
+		trackOrder = (batcher != null && preserveTrackOrder) ? new OrderedEmitter<GeoEvent>() : null;
+
+		int workerThreads = getIntProperty(ServiceAreaCalculatorDefinition.WORKER_THREADS_PROPERTY, 0);
+		if (workerThreads > 0)
+			workers = new PartitionedExecutor("ServiceAreaCalculator-" + getId(), workerThreads, Math.max(1, getIntProperty(ServiceAreaCalculatorDefinition.WORKER_QUEUE_SIZE_PROPERTY, 1000)));
+
+		if (getBooleanProperty(ServiceAreaCalculatorDefinition.AGGREGATE_PROPERTY, false))
+		{
+			double tileSize = getDoubleProperty(ServiceAreaCalculatorDefinition.AGGREGATE_TILE_SIZE_PROPERTY, 0.05);
+			int trackTimeout = getIntProperty(ServiceAreaCalculatorDefinition.AGGREGATE_TRACK_TIMEOUT_PROPERTY, 300);
+			int interval = Math.max(1, getIntProperty(ServiceAreaCalculatorDefinition.AGGREGATE_INTERVAL_PROPERTY, 10));
+			coverageGEDName = getStringProperty(ServiceAreaCalculatorDefinition.AGGREGATE_GED_NAME_PROPERTY, "ServiceAreaCoverage").trim();
+			coverage = new CoverageAggregator((tileSize > 0) ? tileSize : 0.05, trackTimeout * 1000L);
+			coverageEmitter = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ServiceAreaCalculator-" + getId() + "-coverage"));
+			coverageEmitter.scheduleWithFixedDelay(this::sendCoverage, interval, interval, TimeUnit.SECONDS);
+		}
+		else
+			coverage = null;
+
+		timeSlotMillis = TimeUnit.MINUTES.toMillis(Math.max(0, getIntProperty(ServiceAreaCalculatorDefinition.TIME_SLOT_PROPERTY, 0)));
+		presolveCount = getIntProperty(ServiceAreaCalculatorDefinition.PRESOLVE_HOT_CELLS_PROPERTY, 0);
+		presolveLeadMillis = Math.min(getIntProperty(ServiceAreaCalculatorDefinition.PRESOLVE_LEAD_PROPERTY, 60) * 1000L, timeSlotMillis);
+		presolveBatchSize = Math.max(1, batchSize);
+		if (timeSlotMillis > 0 && presolveCount > 0 && cache != null && !queryMode)
+		{
+			hotCells = new HotCellTracker(Math.max(presolveCount * 10, 1000));
+			presolver = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ServiceAreaCalculator-" + getId() + "-presolve"));
+			schedulePresolve(getTimeSlot(System.currentTimeMillis()) + timeSlotMillis);
+		}
+		else
+			hotCells = null;
+
+		openResultLog();
+		openTileStore();
+
+		try
+		{
+			metrics.register(getId());
+		}
+		catch (JMException e)
+		{
+			LOGGER.warn("SERVICE_AREA_METRICS_REGISTRATION_ERROR", e.getMessage());
+		}
+	}
+
+	private void releaseReachIndex()
+	{
+		if (reachIndex != null)
+		{
+			ReachIndex.release(reachIndex, getId());
+			reachIndex = null;
+		}
+	}
+
+	/**
+	 * Identifies the settings that determine the solved areas, including how they are generalized, so that stored areas
+	 * solved with other settings are not reused.
+	 */
+	private String getSolveFingerprint()
+	{
+		String generalization = getDoubleProperty(ServiceAreaCalculatorDefinition.GENERALIZE_TOLERANCE_PROPERTY, 0.0) + "," + getDoubleProperty(ServiceAreaCalculatorDefinition.QUANTIZE_PROPERTY, 0.0) + "," + getBooleanProperty(ServiceAreaCalculatorDefinition.PRESERVE_TOPOLOGY_PROPERTY, false);
+		return getStringProperty(ServiceAreaCalculatorDefinition.SOLVER_BACKEND_PROPERTY, ServiceAreaCalculatorDefinition.SOLVER_BACKEND_NASERVER) + "|" + naConnectionName + "|" + serviceAreaSolverPath + "|" + outputPolygonType + "|" + defaultBreaks + "|" + generalization;
+	}
+
+	/**
+	 * Replays the result log into the cache and starts logging newly solved areas.
+	 */
+	private void openResultLog()
+	{
+		String logFile = getStringProperty(ServiceAreaCalculatorDefinition.RESULT_LOG_FILE_PROPERTY, "");
+		if (logFile.isEmpty())
+			return;
+
+		long syncInterval = getIntProperty(ServiceAreaCalculatorDefinition.RESULT_LOG_SYNC_PROPERTY, 1000);
+		long retention = TimeUnit.HOURS.toMillis(getIntProperty(ServiceAreaCalculatorDefinition.RESULT_LOG_RETENTION_PROPERTY, 24));
+		// the log is keyed by cache cell, so replaying it under another cell size would put areas on the wrong cells
+		ResultLog log = new ResultLog(new File(logFile), getSolveFingerprint() + "|" + cacheTolerance, syncInterval, retention);
+		try
+		{
+			int replayed = log.open(entry ->
+				{
+					if (cache != null && isComplete(entry.getAreas()))
+						cache.put(entry.getKey(), entry.getAreas(), entry.getTime());
+				});
+			LOGGER.info("SERVICE_AREA_RESULT_LOG_OPENED", logFile, replayed);
+			resultLog = log;
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("SERVICE_AREA_RESULT_LOG_ERROR", logFile, e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+	}
+
+	private void closeResultLog()
+	{
+		if (resultLog != null)
+		{
+			resultLog.close();
+			resultLog = null;
+		}
+	}
+
+	/**
+	 * Maps the precomputed areas stored by a previous run and solves the configured locations that are missing from
+	 * the store in the background.
+	 */
+	private void openTileStore()
+	{
+		String storeFile = getStringProperty(ServiceAreaCalculatorDefinition.TILE_STORE_FILE_PROPERTY, "");
+		// the stored areas are solved without traffic, so they do not apply to any time slot
+		if (storeFile.isEmpty() || timeSlotMillis > 0)
+			return;
+
+		int wkid = getIntProperty(ServiceAreaCalculatorDefinition.PRECOMPUTE_WKID_PROPERTY, 4326);
+		double cellSize = getDoubleProperty(ServiceAreaCalculatorDefinition.PRECOMPUTE_CELL_SIZE_PROPERTY, 0.001);
+		if (cellSize <= 0)
+			return;
+		try
+		{
+			tileStore = new AreaTileStore(new File(storeFile), getSolveFingerprint(), wkid, cellSize, driveTimes.length);
+			int stored = tileStore.open();
+			LOGGER.info("SERVICE_AREA_TILE_STORE_OPENED", storeFile, stored);
+
+			List<MapGeometry> points = getPrecomputePoints(wkid, cellSize);
+			if (!points.isEmpty())
+				tileStore.fill(points, this::getAreaAroundPoint);
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("SERVICE_AREA_TILE_STORE_ERROR", storeFile, e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the configured locations to solve ahead of time: the listed points followed by the cell centers of the
+	 * configured extent.
+	 */
+	private List<MapGeometry> getPrecomputePoints(int wkid, double cellSize)
+	{
+		SpatialReference sr = SpatialReference.create(wkid);
+		List<MapGeometry> points = new ArrayList<MapGeometry>();
+		for (String coordinates : getStringProperty(ServiceAreaCalculatorDefinition.PRECOMPUTE_POINTS_PROPERTY, "").split(";"))
+		{
+			double[] xy = parseCoordinates(coordinates, 2);
+			if (xy != null)
+				points.add(new MapGeometry(new Point(xy[0], xy[1]), sr));
+		}
+
+		double[] extent = parseCoordinates(getStringProperty(ServiceAreaCalculatorDefinition.PRECOMPUTE_EXTENT_PROPERTY, ""), 4);
+		if (extent != null)
+		{
+			long firstColumn = (long) Math.floor(extent[0] / cellSize);
+			long firstRow = (long) Math.floor(extent[1] / cellSize);
+			long lastColumn = (long) Math.floor(extent[2] / cellSize);
+			long lastRow = (long) Math.floor(extent[3] / cellSize);
+			for (long row = firstRow; row <= lastRow && points.size() < MAX_PRECOMPUTE_POINTS; row++)
+			{
+				for (long column = firstColumn; column <= lastColumn && points.size() < MAX_PRECOMPUTE_POINTS; column++)
+					points.add(new MapGeometry(new Point((column + 0.5) * cellSize, (row + 0.5) * cellSize), sr));
+			}
+			if (points.size() >= MAX_PRECOMPUTE_POINTS)
+				LOGGER.warn("SERVICE_AREA_TILE_STORE_TOO_MANY_CELLS", MAX_PRECOMPUTE_POINTS);
+		}
+		return points;
+	}
+
+	private static double[] parseCoordinates(String value, int count)
+	{
+		String[] tokens = value.split(",");
+		if (tokens.length != count)
+			return null;
+		double[] coordinates = new double[count];
+		try
+		{
+			for (int i = 0; i < count; i++)
+				coordinates[i] = Double.parseDouble(tokens[i].trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		return coordinates;
+	}
+
+	private void closeTileStore()
+	{
+		if (tileStore != null)
+		{
+			try
+			{
+				tileStore.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.info(e.getMessage(), e);
+			}
+			tileStore = null;
+		}
+	}
+
+	private void dispatchBatch(List<PendingSolve> batch)
+	{
+		try
+		{
+			dispatcher.execute(() -> solveBatch(batch));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			// settle the batch unsolved rather than leaving its events, and the events queued behind them, waiting
+			for (PendingSolve pending : batch)
+			{
+				if (pending.call != null)
+					pending.call.complete(null);
+				settleAndSend(pending, null);
+			}
+		}
+	}
+
+	/**
+	 * Drains the worker queues, flushes pending batches and waits for the outstanding solver requests, in that order,
+	 * so that nothing already accepted is lost, then releases the pooled connections.
+	 */
+	private void stopWorkers()
+	{
+		if (workers != null)
+		{
+			workers.shutdown();
+			workers = null;
+		}
+		if (batcher != null)
+		{
+			batcher.shutdown();
+			batcher = null;
+		}
+		if (dispatcher != null)
+		{
+			dispatcher.shutdown();
+			dispatcher = null;
+		}
+		if (coverageEmitter != null)
+		{
+			coverageEmitter.shutdownNow();
+			coverageEmitter = null;
+		}
+		if (presolver != null)
+		{
+			presolver.shutdownNow();
+			presolver = null;
+		}
+		if (connectionRefresher != null)
+		{
+			connectionRefresher.shutdownNow();
+			connectionRefresher = null;
+		}
+		if (httpClient != null)
+		{
+			try
+			{
+				httpClient.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.info(e.getMessage(), e);
+			}
+			httpClient = null;
+		}
+	}
+
+	/**
+	 * Parses a comma separated list of drive times in minutes. Invalid and non-positive entries are skipped; the
+	 * default of 2 minutes is used when nothing valid remains.
+	 */
+	private static double[] parseDriveTimes(String value)
+	{
+		List<Double> driveTimes = new ArrayList<Double>();
+		if (value != null)
+		{
+			for (String token : value.split(","))
+			{
+				try
+				{
+					double driveTime = Double.parseDouble(token.trim());
+					if (driveTime > 0 && !driveTimes.contains(driveTime))
+						driveTimes.add(driveTime);
+				}
+				catch (NumberFormatException e)
+				{
+					LOGGER.warn("SERVICE_AREA_INVALID_DRIVE_TIME", token.trim());
+				}
+			}
+		}
+		if (driveTimes.isEmpty())
+			driveTimes.add(2.0);
+
+		double[] result = new double[driveTimes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = driveTimes.get(i);
+		return result;
+	}
+
+	private static String formatBreak(double driveTime)
+	{
+		return (driveTime == Math.rint(driveTime)) ? Long.toString((long) driveTime) : Double.toString(driveTime);
+	}
+
+	/**
+	 * Returns the output field of every break: the primary output field for the first break, then the configured
+	 * additional fields, then <code>primary_2</code>, <code>primary_3</code>, ... for any break left without a name.
+	 */
+	private static String[] getOutputGeometryFields(String primaryField, String additionalFields, int breakCount)
+	{
+		String[] fields = new String[breakCount];
+		fields[0] = primaryField;
+		String[] additional = additionalFields.isEmpty() ? new String[0] : additionalFields.split(",");
+		for (int i = 1; i < breakCount; i++)
+		{
+			String field = (i - 1 < additional.length) ? additional[i - 1].trim() : "";
+			fields[i] = field.isEmpty() ? primaryField + "_" + (i + 1) : field;
+		}
+		return fields;
+	}
+
+	/**
+	 * Returns the areas to use when the solver gave none: the expired cached areas of the location if there are any,
+	 * otherwise, in approximate mode, disks sized by the fallback speed.
+	 */
+	private MapGeometry[] getFallbackAreas(MapGeometry point, String cacheKey)
+	{
+		if (ServiceAreaCalculatorDefinition.FALLBACK_NONE.equals(fallbackMode))
+			return null;
+		MapGeometry[] stale = (cache != null && cacheKey != null) ? cache.getStale(cacheKey) : null;
+		if (stale == null && ServiceAreaCalculatorDefinition.FALLBACK_APPROXIMATE.equals(fallbackMode))
+			stale = getApproximateAreas(point);
+		if (stale != null)
+			metrics.recordFallback();
+		return stale;
+	}
+
+	/**
+	 * Returns, for every break, a disk around the point whose radius is the distance covered at the fallback speed.
+	 */
+	private MapGeometry[] getApproximateAreas(MapGeometry point)
+	{
+		if (!(point.getGeometry() instanceof Point) || fallbackSpeedKmh <= 0)
+			return null;
+		Point center = (Point) point.getGeometry();
+		boolean geographic = TrackMovementFilter.isGeographic(point.getSpatialReference());
+		// degrees of latitude and longitude per meter around the point
+		double scaleY = geographic ? 1 / 111320.0 : 1;
+		double scaleX = geographic ? scaleY / Math.max(Math.cos(Math.toRadians(center.getY())), 0.01) : 1;
+
+		MapGeometry[] areas = new MapGeometry[driveTimes.length];
+		for (int i = 0; i < driveTimes.length; i++)
+		{
+			double radius = fallbackSpeedKmh / 3.6 * driveTimes[i] * 60;
+			Polygon disk = new Polygon();
+			for (int v = 0; v < APPROXIMATE_VERTEX_COUNT; v++)
+			{
+				// clockwise, as an outer ring
+				double angle = -2 * Math.PI * v / APPROXIMATE_VERTEX_COUNT;
+				double x = center.getX() + radius * Math.cos(angle) * scaleX;
+				double y = center.getY() + radius * Math.sin(angle) * scaleY;
+				if (v == 0)
+					disk.startPath(x, y);
+				else
+					disk.lineTo(x, y);
+			}
+			areas[i] = new MapGeometry(disk, point.getSpatialReference());
+		}
+		return areas;
+	}
+
+	private static boolean isComplete(MapGeometry[] areas)
+	{
+		if (areas == null)
+			return false;
+		for (MapGeometry area : areas)
+		{
+			if (area == null)
+				return false;
+		}
+		return true;
+	}
+
+	private String getStringProperty(String name, String defaultValue)
+	{
+		String value = hasProperty(name) ? getProperty(name).getValueAsString() : null;
+		return Validator.isEmpty(value) ? defaultValue : value.trim();
+	}
+
+	private boolean getBooleanProperty(String name, boolean defaultValue)
+	{
+		String value = hasProperty(name) ? getProperty(name).getValueAsString() : null;
+		return Validator.isEmpty(value) ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	private int getIntProperty(String name, int defaultValue)
+	{
+		String value = hasProperty(name) ? getProperty(name).getValueAsString() : null;
+		if (Validator.isEmpty(value))
+			return defaultValue;
+		try
+		{
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	private double getDoubleProperty(String name, double defaultValue)
+	{
+		String value = hasProperty(name) ? getProperty(name).getValueAsString() : null;
+		if (Validator.isEmpty(value))
+			return defaultValue;
+		try
+		{
+			return Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	public long getCacheHits()
+	{
+		return (cache != null) ? cache.getHits() : 0;
+	}
+
+	public long getCacheMisses()
+	{
+		return (cache != null) ? cache.getMisses() : 0;
+	}
+
+	private String getCacheKey(MapGeometry point)
+	{
+		return getCacheKey(point, 0);
+	}
+
+	/**
+	 * Builds the cache key for a point by snapping it to a grid of <code>cacheTolerance</code> sized cells, followed by
+	 * the start of the time slot if the areas are solved per time of day. Returns <code>null</code> for geometries that
+	 * cannot be cached.
+	 */
+	private String getCacheKey(MapGeometry point, long slot)
+	{
+		if (!(point.getGeometry() instanceof Point))
+			return null;
+
+		Point pt = (Point) point.getGeometry();
+		StringBuilder sb = new StringBuilder(96);
+		sb.append(naConnectionName).append('|');
+		sb.append(outputPolygonType).append('|');
+		sb.append(defaultBreaks).append('|');
+		sb.append((point.getSpatialReference() != null) ? point.getSpatialReference().getID() : 0).append('|');
+		if (cacheTolerance > 0)
+		{
+			sb.append((long) Math.floor(pt.getX() / cacheTolerance)).append(',');
+			sb.append((long) Math.floor(pt.getY() / cacheTolerance));
+		}
+		else
+		{
+			sb.append(pt.getX()).append(',').append(pt.getY());
+		}
+		if (slot > 0)
+			sb.append('|').append(slot);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the start of the time slot of the event, in milliseconds since the epoch, or 0 if the areas are not solved
+	 * per time of day. Events without a start time fall in the current slot.
+	 */
+	private long getTimeSlot(GeoEvent geoEvent)
+	{
+		Date time = geoEvent.getStartTime();
+		return getTimeSlot((time != null) ? time.getTime() : System.currentTimeMillis());
+	}
+
+	private long getTimeSlot(long millis)
+	{
+		long slotMillis = timeSlotMillis;
+		return (slotMillis > 0) ? Math.floorDiv(millis, slotMillis) * slotMillis : 0;
+	}
+
+	/**
+	 * Schedules the busiest cells to be solved for the slot starting at <code>slot</code>, shortly before it begins.
+	 */
+	private void schedulePresolve(long slot)
+	{
+		ScheduledExecutorService currentPresolver = presolver;
+		if (currentPresolver == null)
+			return;
+		long delay = Math.max(0, slot - presolveLeadMillis - System.currentTimeMillis());
+		try
+		{
+			currentPresolver.schedule(() -> presolve(slot), delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the processor was stopped or reconfigured
+		}
+	}
+
+	/**
+	 * Solves the areas of the busiest cells of the past slot for the coming slot and caches them, so that the first
+	 * events of the slot do not wait for the solver.
+	 */
+	private void presolve(long slot)
+	{
+		try
+		{
+			HotCellTracker currentHotCells = hotCells;
+			ExpiringCache<String, MapGeometry[]> currentCache = cache;
+			if (currentHotCells == null || currentCache == null)
+				return;
+
+			List<MapGeometry> points = new ArrayList<MapGeometry>();
+			for (MapGeometry point : currentHotCells.takeHottest(presolveCount))
+			{
+				if (currentCache.getStale(getCacheKey(point, slot)) == null)
+					points.add(point);
+			}
+			for (int start = 0; start < points.size() && !Thread.currentThread().isInterrupted(); start += presolveBatchSize)
+			{
+				List<MapGeometry> chunk = points.subList(start, Math.min(start + presolveBatchSize, points.size()));
+				MapGeometry[][] areas = getAreasAroundPoints(chunk, slot);
+				for (int i = 0; i < chunk.size(); i++)
+				{
+					if (isComplete(areas[i]))
+						cacheAreas(getCacheKey(chunk.get(i), slot), areas[i]);
+				}
+			}
+			LOGGER.debug("SERVICE_AREA_PRESOLVED", points.size(), new Date(slot));
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("PROCESSOR_UNABLE_ERROR", e.getMessage());
+			LOGGER.info(e.getMessage(), e);
+		}
+		finally
+		{
+			// never schedule a slot that has already begun, even if this one took longer than a slot to solve
+			schedulePresolve(Math.max(slot, getTimeSlot(System.currentTimeMillis())) + timeSlotMillis);
+		}
+	}
+
+	/**
+	 * Keys the movement filter by track and time slot, so that a track that has not moved gets new areas once the
+	 * slot changes.
+	 */
+	private static String getTrackKey(GeoEvent geoEvent, long slot)
+	{
+		return (slot > 0) ? geoEvent.getTrackId() + "@" + slot : geoEvent.getTrackId();
+	}
+
+	private void recordHotCell(String cacheKey, MapGeometry point)
+	{
+		HotCellTracker currentHotCells = hotCells;
+		if (currentHotCells != null && cacheKey != null)
+			currentHotCells.record(getCacheKey(point), point);
+	}
+
+	protected MapGeometry[] processGeometry(GeoEvent geoevent, String geometryField) throws Exception
+	{
+		MapGeometry[] geomout = null;
+		try
+		{
+			MapGeometry geom = (MapGeometry) geoevent.getField(geometryField);
+			long slot = getTimeSlot(geoevent);
+			if (movementFilter != null)
+			{
+				geomout = movementFilter.get(getTrackKey(geoevent, slot), geom);
+				if (geomout != null)
+					return geomout;
+			}
+			if (tileStore != null)
+			{
+				geomout = tileStore.get(geom);
+				if (geomout != null)
+					return geomout;
+			}
+
+			String cacheKey = (cache != null || flights != null || resultLog != null) ? getCacheKey(geom, slot) : null;
+			recordHotCell(cacheKey, geom);
+			if (cache != null && cacheKey != null)
+				geomout = cache.get(cacheKey);
+			if (geomout == null)
+			{
+				geomout = getCoalescedAreaAroundPoint(geom, cacheKey, slot);
+				if (isComplete(geomout))
+					cacheAreas(cacheKey, geomout);
+			}
+			if (movementFilter != null && isComplete(geomout))
+				movementFilter.put(getTrackKey(geoevent, slot), geom, geomout);
+			if (!isComplete(geomout))
+			{
+				MapGeometry[] fallback = getFallbackAreas(geom, cacheKey);
+				if (fallback != null)
+					geomout = fallback;
+			}
+		}
+		catch (Exception e)
+		{
+			if (geoevent.getTrackId() == null)
+				throw new Exception(LOGGER.translate("SERVICE_AREA_UNABLE_ERROR1", e.getMessage()), e);
+			else
+				throw new Exception(LOGGER.translate("SERVICE_AREA_UNABLE_ERROR2", geoevent.getTrackId(), e.getMessage()), e);
+		}
+		return geomout;
+	}
+
+	//Handle the incompatibility with 10.5.0 Patch 1 release
+	public Collection<KeyValue> getDefaultParamsForRequest(ArcGISServerConnection agsConnection)
+	{
+	  Collection<KeyValue> params = new ArrayList<KeyValue>();
+	  params.add(new KeyValue("f", "json"));
+	  String token = agsConnection.getDecryptedToken();
+	  if (token != null)
+	    params.add(new KeyValue("token", token));
+
+	  return params;
+	} 
+	
+	public HttpPost createPostRequest(URL url, FormEncodedBody body) throws IOException
+  {
+    try
+    {
+      return createPostRequest(url.toURI(), body);
+    }
+    catch (URISyntaxException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+	public HttpPost createPostRequest(URI uri, FormEncodedBody body)
+	{
+		HttpPost httpPost = new HttpPost(uri);
+		httpPost.setEntity(new ByteArrayEntity(body.toBytes(), FORM_CONTENT_TYPE));
+		return httpPost;
+	}
+
+	/**
+	 * Returns the areas around the point like {@link #getAreaAroundPoint(MapGeometry)}, but waits for the result of an
+	 * identical solve already in progress instead of sending another request.
+	 */
+	private MapGeometry[] getCoalescedAreaAroundPoint(MapGeometry point, String key, long slot)
+	{
+		SingleFlight<String, MapGeometry[]> currentFlights = flights;
+		if (currentFlights == null || key == null)
+			return getAreaAroundPoint(point, slot);
+
+		SingleFlight<String, MapGeometry[]>.Call call = currentFlights.join(key);
+		if (!call.isLeader())
+		{
+			metrics.recordCoalesced();
+			return call.await();
+		}
+		MapGeometry[] areas = null;
+		try
+		{
+			areas = getAreaAroundPoint(point, slot);
+		}
+		finally
+		{
+			call.complete(areas);
+		}
+		return areas;
+	}
+
+	/**
+	 * Returns the areas around the point, one per drive time break.
+	 */
+	public MapGeometry[] getAreaAroundPoint(MapGeometry point)
+	{
+		return getAreaAroundPoint(point, 0);
+	}
+
+	/**
+	 * Returns the areas around the point at the given time of day, one per drive time break.
+	 */
+	public MapGeometry[] getAreaAroundPoint(MapGeometry point, long timeOfDay)
+	{
+		return getAreasAroundPoints(Arrays.asList(point), timeOfDay)[0];
+	}
+
+	/**
+	 * Solves the service areas of several points, for every drive time break, in one request. The returned array is
+	 * indexed by point, then by break; entries are <code>null</code> where no polygon could be calculated.
+	 */
+	public MapGeometry[][] getAreasAroundPoints(List<MapGeometry> points)
+	{
+		return getAreasAroundPoints(points, 0);
+	}
+
+	/**
+	 * Solves the service areas of several points like {@link #getAreasAroundPoints(List)}, with the traffic of the
+	 * given time of day (milliseconds since the epoch, UTC). A time of day of 0 solves without traffic. The local solver
+	 * has no traffic profiles and ignores it.
+	 */
+	public MapGeometry[][] getAreasAroundPoints(List<MapGeometry> points, long timeOfDay)
+	{
+		if (localSolver != null)
+		{
+			double[] limitsSeconds = new double[driveTimes.length];
+			for (int i = 0; i < limitsSeconds.length; i++)
+				limitsSeconds[i] = driveTimes[i] * 60.0;
+			MapGeometry[][] areas = new MapGeometry[points.size()][];
+			for (int i = 0; i < areas.length; i++)
+			{
+				long start = System.nanoTime();
+				metrics.recordRequest(0);
+				areas[i] = localSolver.solve(points.get(i), limitsSeconds);
+				metrics.recordSolverLatency(System.nanoTime() - start);
+				if (areas[i] == null)
+				{
+					metrics.recordNoPolygon();
+					areas[i] = new MapGeometry[driveTimes.length];
+				}
+				else
+					metrics.recordSuccess();
+			}
+			return generalize(areas);
+		}
+
+		SolverGuard currentGuard = guard;
+		if (currentGuard != null && !acquire(currentGuard))
+		{
+			onRejected(currentGuard);
+			return new MapGeometry[points.size()][driveTimes.length];
+		}
+
+		SolverEndpointPool currentEndpoints = endpoints;
+		List<SolverEndpointPool.Endpoint> tried = new ArrayList<SolverEndpointPool.Endpoint>(2);
+		boolean tokenRefreshed = false;
+		long start = System.nanoTime();
+		MapGeometry[][] solved = null;
+		for (int attempt = 0; attempt <= solverRetries && solved == null; attempt++)
+		{
+			SolverEndpointPool.Endpoint endpoint = currentEndpoints.select(tried, solverWaitMillis);
+			if (endpoint == null)
+			{
+				// every connection stayed busy for the whole request timeout
+				if (tried.isEmpty())
+					metrics.recordTimeout();
+				break;
+			}
+			tried.add(endpoint);
+			long attemptStart = System.nanoTime();
+			try
+			{
+				ResolvedConnection connection = endpoint.getConnection();
+				if (connection == null)
+					connection = resolveConnection(endpoint);
+				solved = solveOn(connection, points, timeOfDay);
+				endpoint.onSuccess(System.nanoTime() - attemptStart);
+			}
+			catch (SolverErrorException e)
+			{
+				if (e.isTokenError() && !tokenRefreshed)
+				{
+					// the token expired before the scheduled refresh: fetch it now and send the request again
+					endpoint.release();
+					metrics.recordFailure();
+					tokenRefreshed = true;
+					tried.remove(endpoint);
+					attempt--;
+					try
+					{
+						resolveConnection(endpoint);
+					}
+					catch (IOException resolveError)
+					{
+						LOGGER.info(resolveError.getMessage(), resolveError);
+					}
+					continue;
+				}
+				onSolveFailure(endpoint, e);
+			}
+			catch (Exception e)
+			{
+				onSolveFailure(endpoint, e);
+			}
+		}
+
+		if (solved == null)
+		{
+			if (currentGuard != null)
+				currentGuard.onFailure();
+			return new MapGeometry[points.size()][driveTimes.length];
+		}
+		if (currentGuard != null)
+			currentGuard.onSuccess(System.nanoTime() - start);
+		// outside the request's bookkeeping, so that a generalization error cannot count as a failed request
+		return generalize(solved);
+	}
+
+	private void onSolveFailure(SolverEndpointPool.Endpoint endpoint, Exception e)
+	{
+		endpoint.onFailure();
+		if (e instanceof InterruptedIOException)
+			metrics.recordTimeout();
+		else
+			metrics.recordFailure();
+		LOGGER.debug("SERVICE_AREA_ENDPOINT_ERROR", endpoint.getConnectionName(), e.getMessage());
+		LOGGER.info(e.getMessage(), e);
+	}
+
+	/**
+	 * Looks the endpoint's ArcGIS Server connection up again and caches its solver URI, referer and token.
+	 */
+	private ResolvedConnection resolveConnection(SolverEndpointPool.Endpoint endpoint) throws IOException
+	{
+		ArcGISServerConnection agsConnection = agsConnectionManager.getArcGISServerConnection(endpoint.getConnectionName());
+		if (agsConnection == null)
+			throw new IOException(LOGGER.translate("SERVICE_AREA_CONNECTION_NOT_FOUND", endpoint.getConnectionName()));
+		try
+		{
+			ResolvedConnection connection = new ResolvedConnection(ResolvedConnection.solverUri(agsConnection.getUrl().toExternalForm(), serviceAreaSolverPath), agsConnection.getReferer(), getDefaultParamsForRequest(agsConnection));
+			endpoint.setConnection(connection);
+			return connection;
+		}
+		catch (URISyntaxException e)
+		{
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Waits for the guard to let a solver request through. Requests over the concurrency limit or the rate wait for at
+	 * most the request timeout.
+	 */
+	private boolean acquire(SolverGuard currentGuard)
+	{
+		try
+		{
+			return currentGuard.acquire(solverWaitMillis);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Counts a solver request the guard did not let through. The warning is logged at most once per
+	 * {@link #REJECTION_LOG_INTERVAL_MILLIS}, the rest at debug level.
+	 */
+	private void onRejected(SolverGuard currentGuard)
+	{
+		metrics.recordRejected();
+		long now = System.currentTimeMillis();
+		long loggedAt = rejectionLoggedAt.get();
+		if (now - loggedAt >= REJECTION_LOG_INTERVAL_MILLIS && rejectionLoggedAt.compareAndSet(loggedAt, now))
+			LOGGER.warn("SERVICE_AREA_SOLVE_REJECTED", currentGuard.getState(), metrics.getRejectedCount());
+		else
+			LOGGER.debug("SERVICE_AREA_SOLVE_REJECTED", currentGuard.getState(), metrics.getRejectedCount());
+	}
+
+	/**
+	 * Refreshes the cached details of every connection, so that token renewals and connection edits are picked up
+	 * without a request failing first. A connection that cannot be resolved keeps its previous details.
+	 */
+	private void refreshConnections()
+	{
+		SolverEndpointPool currentEndpoints = endpoints;
+		if (currentEndpoints == null)
+			return;
+		for (SolverEndpointPool.Endpoint endpoint : currentEndpoints.getEndpoints())
+		{
+			try
+			{
+				resolveConnection(endpoint);
+			}
+			catch (Exception e)
+			{
+				LOGGER.debug("SERVICE_AREA_ENDPOINT_ERROR", endpoint.getConnectionName(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Sends one solve request for the points to the connection.
+	 */
+	private MapGeometry[][] solveOn(ResolvedConnection connection, List<MapGeometry> points, long timeOfDay) throws IOException
+	{
+		FormEncodedBody body = FormEncodedBody.create();
+		body.addAll(connection.getDefaultParams());
+		body.addFacilities(points);
+		body.add("defaultBreaks", defaultBreaks);
+		body.add("travelDirection", "esriNATravelDirectionFromFacility");
+		// one whole (disk) polygon per facility and break, never merged across facilities
+		body.add("splitPolygonsAtBreaks", "false");
+		body.add("overlapPolygons", "true");
+		body.add("mergeSimilarPolygonRanges", "false");
+
+		if (!Validator.isEmpty(outputPolygonType))
+			body.add("outputPolygons", outputPolygonType);
+		if (timeOfDay > 0)
+		{
+			body.add("timeOfDay", Long.toString(timeOfDay));
+			body.add("timeOfDayIsUTC", "true");
+		}
+
+		HttpPost postRequest = createPostRequest(connection.getSolverUri(), body);
+		postRequest.addHeader("Referer", connection.getReferer());
+		metrics.recordRequest(postRequest.getEntity().getContentLength());
+		long start = System.nanoTime();
+		return httpClient.execute(postRequest, in ->
+			{
+				long received = System.nanoTime();
+				metrics.recordSolverLatency(received - start);
+				try
+				{
+					return parseAreaSolverReply(metrics.countResponseBytes(in), points.size());
+				}
+				finally
+				{
+					metrics.recordParseTime(System.nanoTime() - received);
+				}
+			});
+	}
+
+	/**
+	 * Generalizes the solved polygons in place, if generalization is configured, and records the vertex counts.
+	 */
+	private MapGeometry[][] generalize(MapGeometry[][] areas)
+	{
+		PolygonGeneralizer currentGeneralizer = generalizer;
+		if (currentGeneralizer == null)
+			return areas;
+		for (MapGeometry[] facilityAreas : areas)
+		{
+			for (int i = 0; i < facilityAreas.length; i++)
+			{
+				if (facilityAreas[i] == null)
+					continue;
+				try
+				{
+					int before = ((MultiVertexGeometry) facilityAreas[i].getGeometry()).getPointCount();
+					MapGeometry generalized = currentGeneralizer.generalize(facilityAreas[i]);
+					metrics.recordGeneralization(before, ((MultiVertexGeometry) generalized.getGeometry()).getPointCount());
+					facilityAreas[i] = generalized;
+				}
+				catch (RuntimeException e)
+				{
+					// the solved area is still correct, only larger
+					LOGGER.debug("SERVICE_AREA_GENERALIZE_ERROR", e.getMessage());
+					LOGGER.info(e.getMessage(), e);
+				}
+			}
+		}
+		return areas;
+	}
+
+	private MapGeometry[][] parseAreaSolverReply(InputStream reply, int facilityCount) throws IOException
+	{
+		MapGeometry[][] areas = SolverReplyParser.parse(reply, facilityCount, driveTimes);
+		if (areas == null)
+		{
+			metrics.recordNoPolygon();
+			LOGGER.error("SERVICE_AREA_NO_SAPOLYGON");
+			return new MapGeometry[facilityCount][driveTimes.length];
+		}
+
+		for (MapGeometry[] facilityAreas : areas)
+		{
+			if (!isComplete(facilityAreas))
+			{
+				metrics.recordNoPolygon();
+				LOGGER.error("SERVICE_AREA_NO_GEOMETRY_IN_RESULT");
+				return areas;
+			}
+		}
+		metrics.recordSuccess();
+		return areas;
+	}
+
+	@Override
+	public void shutdown()
+	{
+		stopWorkers();
+		closeTileStore();
+		closeResultLog();
+		releaseReachIndex();
+		super.shutdown();
+		clearGeoEventDefinitionMapper();
+		if (cache != null)
+		{
+			LOGGER.info("SERVICE_AREA_CACHE_STATS", cache.getHits(), cache.getMisses(), cache.size());
+			cache.clear();
+		}
+		if (movementFilter != null)
+			movementFilter.clear();
+		try
+		{
+			metrics.unregister();
+		}
+		catch (JMException e)
+		{
+			LOGGER.info(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void setId(String id)
+	{
+		super.setId(id);
+		if (messaging != null)
+			geoEventProducer = messaging.createGeoEventProducer(new EventDestination(id + ":event"));
+	}
+
+	@Override
+	public void send(GeoEvent geoEvent) throws MessagingException
+	{
+		if (geoEventProducer != null && geoEvent != null)
+			geoEventProducer.send(geoEvent);
+	}
+
+	@Override
+	public EventDestination getEventDestination()
+	{
+		return (geoEventProducer != null) ? geoEventProducer.getEventDestination() : null;
+	}
+
+	@Override
+	public List<EventDestination> getEventDestinations()
+	{
+		return (geoEventProducer != null) ? Arrays.asList(geoEventProducer.getEventDestination()) : new ArrayList<EventDestination>();
+	}
+
+	@Override
+	public void disconnect()
+	{
+		if (geoEventProducer != null)
+			geoEventProducer.disconnect();
+	}
+
+	@Override
+	public boolean isConnected()
+	{
+		return (geoEventProducer != null) ? geoEventProducer.isConnected() : false;
+	}
+
+	@Override
+	public String getStatusDetails()
+	{
+		return (geoEventProducer != null) ? geoEventProducer.getStatusDetails() : "";
+	}
+
+	@Override
+	public void setup() throws MessagingException
+	{
+		;
+	}
+
+	@Override
+	public void init() throws MessagingException
+	{
+		;
+	}
+
+	@Override
+	public void update(Observable o, Object arg)
+	{
+		;
+	}
+
+	/**
+	 * Where the areas of events of one incoming definition go: the output definition to create events of
+	 * (<code>null</code> to write into the incoming event), the breaks whose fields are appended after the incoming
+	 * fields, and the breaks written to existing fields together with their precomputed field indices.
+	 */
+	private static class OutputLayout
+	{
+		final GeoEventDefinition	input;
+		final GeoEventDefinition	output;
+		final int[]								appendedBreaks;
+		final int[]								setBreaks;
+		final int[]								setIndices;
+		final int									inputFieldCount;
+		final int									outputFieldCount;
+
+		OutputLayout(GeoEventDefinition input, GeoEventDefinition output, String[] fields)
+		{
+			this.input = input;
+			this.output = output;
+			GeoEventDefinition target = (output != null) ? output : input;
+			inputFieldCount = input.getFieldDefinitions().size();
+			outputFieldCount = target.getFieldDefinitions().size();
+			int appendedCount = 0;
+			for (String field : fields)
+			{
+				if (input.getFieldDefinition(field) == null)
+					appendedCount++;
+			}
+			appendedBreaks = new int[appendedCount];
+			setBreaks = new int[fields.length - appendedCount];
+			setIndices = new int[setBreaks.length];
+			for (int i = 0, a = 0, s = 0; i < fields.length; i++)
+			{
+				if (input.getFieldDefinition(fields[i]) == null)
+					appendedBreaks[a++] = i;
+				else
+				{
+					setBreaks[s] = i;
+					setIndices[s++] = target.getIndexOf(fields[i]);
+				}
+			}
+		}
+	}
+
+	private static class LayoutCreationException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		LayoutCreationException(Exception cause)
+		{
+			super(cause);
+		}
+	}
+
+	private static class PendingSolve
+	{
+		final GeoEvent																			geoEvent;
+		final MapGeometry																		point;
+		// start of the time slot to solve for, or 0
+		final long																					slot;
+		final String																				cacheKey;
+		// set when other events with the same key wait for this solve
+		final SingleFlight<String, MapGeometry[]>.Call	call;
+		// set when the event takes its place in its track's ordering chain instead of being sent directly
+		final CompletableFuture<GeoEvent>										result;
+
+		PendingSolve(GeoEvent geoEvent, MapGeometry point, long slot, String cacheKey, SingleFlight<String, MapGeometry[]>.Call call, CompletableFuture<GeoEvent> result)
+		{
+			this.geoEvent = geoEvent;
+			this.point = point;
+			this.slot = slot;
+			this.cacheKey = cacheKey;
+			this.call = call;
+			this.result = result;
+		}
 	}
 }
@@ -34,29 +34,165 @@ import com.esri.ges.processor.GeoEventProcessorDefinitionBase;
 
 public class ServiceAreaCalculatorDefinition extends GeoEventProcessorDefinitionBase
 {
+	public final static String	PROCESSOR_MODE_PROPERTY				= "processorMode";
 	public final static String	NA_CONNECTION_PROPERTY				= "naConnectionName";
+	public final static String	ADDITIONAL_CONNECTIONS_PROPERTY	= "additionalNaConnectionNames";
+	public final static String	LOAD_BALANCING_PROPERTY				= "loadBalancing";
+	public final static String	EJECTION_SECONDS_PROPERTY			= "endpointEjectionSeconds";
+	public final static String	SOLVER_RETRIES_PROPERTY				= "solverRetries";
+	public final static String	CONNECTION_REFRESH_PROPERTY		= "connectionRefreshSeconds";
 	public final static String	NA_PATH_PROPERTY							= "routeSolverPath";
 	public final static String	DRIVE_TIME_PROPERTY						= "driveTimeMinutes";
 	public final static String	OUTPUT_POLYGON_TYPE_PROPERTY	= "outputPolygonType";
+	public final static String	ADDITIONAL_OUTPUT_FIELDS_PROPERTY	= "additionalOutputGeometryFields";
+	public final static String	AGGREGATE_PROPERTY						= "aggregateCoverage";
+	public final static String	AGGREGATE_INTERVAL_PROPERTY		= "aggregateIntervalSeconds";
+	public final static String	AGGREGATE_TILE_SIZE_PROPERTY	= "aggregateTileSize";
+	public final static String	AGGREGATE_TRACK_TIMEOUT_PROPERTY	= "aggregateTrackTimeoutSeconds";
+	public final static String	AGGREGATE_GED_NAME_PROPERTY		= "aggregateGEDName";
+	public final static String	REACH_INDEX_PROPERTY					= "reachIndexName";
+	public final static String	REACH_INDEX_TIMEOUT_PROPERTY	= "reachIndexTrackTimeoutSeconds";
+	public final static String	QUERY_DRIVE_TIME_PROPERTY			= "queryDriveTimeMinutes";
+	public final static String	QUERY_OUTPUT_FIELD_PROPERTY		= "reachableUnitsField";
+	public final static String	GENERALIZE_TOLERANCE_PROPERTY	= "generalizeTolerance";
+	public final static String	QUANTIZE_PROPERTY							= "quantizeCoordinates";
+	public final static String	PRESERVE_TOPOLOGY_PROPERTY		= "preserveTopology";
+	public final static String	CACHE_SIZE_PROPERTY						= "cacheSize";
+	public final static String	CACHE_TOLERANCE_PROPERTY			= "cacheTolerance";
+	public final static String	CACHE_TTL_PROPERTY						= "cacheTimeToLiveSeconds";
+	public final static String	COALESCE_PROPERTY							= "coalesceRequests";
+	public final static String	MIN_MOVE_DISTANCE_PROPERTY		= "minimumMoveDistance";
+	public final static String	TRACK_MAX_AGE_PROPERTY				= "trackMaxAgeSeconds";
+	public final static String	TRACK_CACHE_SIZE_PROPERTY			= "trackCacheSize";
+	public final static String	TILE_STORE_FILE_PROPERTY			= "tileStoreFile";
+	public final static String	PRECOMPUTE_POINTS_PROPERTY		= "precomputePoints";
+	public final static String	PRECOMPUTE_EXTENT_PROPERTY		= "precomputeExtent";
+	public final static String	PRECOMPUTE_CELL_SIZE_PROPERTY	= "precomputeCellSize";
+	public final static String	PRECOMPUTE_WKID_PROPERTY			= "precomputeWkid";
+	public final static String	RESULT_LOG_FILE_PROPERTY			= "resultLogFile";
+	public final static String	RESULT_LOG_SYNC_PROPERTY			= "resultLogSyncMilliseconds";
+	public final static String	RESULT_LOG_RETENTION_PROPERTY	= "resultLogRetentionHours";
+	public final static String	TIME_SLOT_PROPERTY						= "timeOfDaySlotMinutes";
+	public final static String	PRESOLVE_HOT_CELLS_PROPERTY		= "presolveHotCells";
+	public final static String	PRESOLVE_LEAD_PROPERTY				= "presolveLeadSeconds";
+	public final static String	BATCH_SIZE_PROPERTY						= "batchSize";
+	public final static String	BATCH_WINDOW_PROPERTY					= "batchWindowMilliseconds";
+	public final static String	ASYNC_PROPERTY								= "asynchronousSolve";
+	public final static String	MAX_IN_FLIGHT_PROPERTY				= "maxInFlightRequests";
+	public final static String	PRESERVE_TRACK_ORDER_PROPERTY	= "preserveTrackOrder";
+	public final static String	WORKER_THREADS_PROPERTY				= "workerThreads";
+	public final static String	WORKER_QUEUE_SIZE_PROPERTY		= "workerQueueSize";
+	public final static String	MAX_CONNECTIONS_PER_ROUTE_PROPERTY	= "maxConnectionsPerRoute";
+	public final static String	REQUEST_TIMEOUT_PROPERTY						= "requestTimeoutSeconds";
+	public final static String	MAX_REQUESTS_PER_SECOND_PROPERTY		= "maxRequestsPerSecond";
+	public final static String	BREAKER_FAILURE_THRESHOLD_PROPERTY	= "circuitBreakerFailureThreshold";
+	public final static String	BREAKER_OPEN_PROPERTY								= "circuitBreakerOpenSeconds";
+	public final static String	TARGET_LATENCY_PROPERTY							= "targetLatencyMilliseconds";
+	public final static String	FALLBACK_PROPERTY										= "fallbackServiceArea";
+	public final static String	FALLBACK_SPEED_PROPERTY							= "fallbackSpeedKmh";
+	public final static String	SOLVER_BACKEND_PROPERTY							= "solverBackend";
+	public final static String	LOCAL_GRAPH_FILE_PROPERTY						= "localGraphFile";
+	public final static String	LOCAL_BUFFER_DISTANCE_PROPERTY			= "localBufferDistance";
+
+	public final static String	PROCESSOR_MODE_CALCULATE						= "Calculate";
+	public final static String	PROCESSOR_MODE_QUERY								= "Query";
+	public final static String	SOLVER_BACKEND_NASERVER							= "NAServer";
+	public final static String	SOLVER_BACKEND_LOCAL								= "Local";
+	public final static String	LOAD_BALANCING_LEAST_OUTSTANDING		= "LeastOutstanding";
+	public final static String	LOAD_BALANCING_LATENCY_WEIGHTED			= "LatencyWeighted";
+	public final static String	FALLBACK_NONE												= "None";
+	public final static String	FALLBACK_CACHED											= "Cached";
+	public final static String	FALLBACK_APPROXIMATE								= "Approximate";
 
 	public ServiceAreaCalculatorDefinition()
 	{
 		try
 		{
+			List<LabeledValue> processorMode = new ArrayList<LabeledValue>(2);
+			processorMode.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.PROCESSOR_MODE_CALCULATE_LBL}", PROCESSOR_MODE_CALCULATE));
+			processorMode.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.PROCESSOR_MODE_QUERY_LBL}", PROCESSOR_MODE_QUERY));
+			propertyDefinitions.put(PROCESSOR_MODE_PROPERTY, new PropertyDefinition(PROCESSOR_MODE_PROPERTY, PropertyType.String, PROCESSOR_MODE_CALCULATE, "${com.esri.geoevent.processor.service-area-calculator-processor.PROCESSOR_MODE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PROCESSOR_MODE_DESC}", false, false, processorMode));
 			propertyDefinitions.put("inputGeometryField", new PropertyDefinition("inputGeometryField", PropertyType.GeoEventField_Geometry, "GEOMETRY", "${com.esri.geoevent.processor.service-area-calculator-processor.INPUTGEOMETRYFIELD_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.INPUTGEOMETRYFIELD_DESC}", true, false));
 			propertyDefinitions.put("replaceGeometry", new PropertyDefinition("replaceGeometry", PropertyType.Boolean, "true", "${com.esri.geoevent.processor.service-area-calculator-processor.REPLACEGEOMETRY_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.REPLACEGEOMETRY_DESC}", true, false));
 			propertyDefinitions.put("outputGeometryField", new PropertyDefinition("outputGeometryField", PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUTGEOMETRYFIELD_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUTGEOMETRYFIELD_DESC}", "replaceGeometry=false", false, false));
 			propertyDefinitions.put("outputGEDName", new PropertyDefinition("outputGEDName", PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUTGEDNAME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUTGEDNAME_DESC}", "replaceGeometry=false", false, false));
 			propertyDefinitions.put(NA_CONNECTION_PROPERTY, new PropertyDefinition(NA_CONNECTION_PROPERTY, PropertyType.ArcGISConnection, "", "${com.esri.geoevent.processor.service-area-calculator-processor.AGS_CONNECTION_NAME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGS_CONNECTION_NAME_DESC}", true, false));
 
+			propertyDefinitions.put(ADDITIONAL_CONNECTIONS_PROPERTY, new PropertyDefinition(ADDITIONAL_CONNECTIONS_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.ADDITIONAL_CONNECTIONS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.ADDITIONAL_CONNECTIONS_DESC}", false, false));
+			List<LabeledValue> loadBalancing = new ArrayList<LabeledValue>(2);
+			loadBalancing.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.LOAD_BALANCING_LEAST_OUTSTANDING_LBL}", LOAD_BALANCING_LEAST_OUTSTANDING));
+			loadBalancing.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.LOAD_BALANCING_LATENCY_WEIGHTED_LBL}", LOAD_BALANCING_LATENCY_WEIGHTED));
+			propertyDefinitions.put(LOAD_BALANCING_PROPERTY, new PropertyDefinition(LOAD_BALANCING_PROPERTY, PropertyType.String, LOAD_BALANCING_LEAST_OUTSTANDING, "${com.esri.geoevent.processor.service-area-calculator-processor.LOAD_BALANCING_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.LOAD_BALANCING_DESC}", false, false, loadBalancing));
+			propertyDefinitions.put(EJECTION_SECONDS_PROPERTY, new PropertyDefinition(EJECTION_SECONDS_PROPERTY, PropertyType.Integer, 30, "${com.esri.geoevent.processor.service-area-calculator-processor.EJECTION_SECONDS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.EJECTION_SECONDS_DESC}", false, false));
+			propertyDefinitions.put(SOLVER_RETRIES_PROPERTY, new PropertyDefinition(SOLVER_RETRIES_PROPERTY, PropertyType.Integer, 1, "${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_RETRIES_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_RETRIES_DESC}", false, false));
+			propertyDefinitions.put(CONNECTION_REFRESH_PROPERTY, new PropertyDefinition(CONNECTION_REFRESH_PROPERTY, PropertyType.Integer, 300, "${com.esri.geoevent.processor.service-area-calculator-processor.CONNECTION_REFRESH_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.CONNECTION_REFRESH_DESC}", false, false));
 			propertyDefinitions.put(NA_PATH_PROPERTY, new PropertyDefinition(NA_PATH_PROPERTY, PropertyType.String, "rest/services/Network/USA/NAServer/Service%20Area/solveServiceArea", "${com.esri.geoevent.processor.service-area-calculator-processor.NA_SOLVER_PATH_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.NA_SOLVER_PATH_DESC}", false, false));
-			propertyDefinitions.put(DRIVE_TIME_PROPERTY, new PropertyDefinition(DRIVE_TIME_PROPERTY, PropertyType.Integer, 2, "${com.esri.geoevent.processor.service-area-calculator-processor.DRIVE_TIME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.DRIVE_TIME_DESC}", false, false));
+			propertyDefinitions.put(DRIVE_TIME_PROPERTY, new PropertyDefinition(DRIVE_TIME_PROPERTY, PropertyType.String, "2", "${com.esri.geoevent.processor.service-area-calculator-processor.DRIVE_TIME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.DRIVE_TIME_DESC}", false, false));
+			propertyDefinitions.put(ADDITIONAL_OUTPUT_FIELDS_PROPERTY, new PropertyDefinition(ADDITIONAL_OUTPUT_FIELDS_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.ADDITIONAL_OUTPUT_FIELDS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.ADDITIONAL_OUTPUT_FIELDS_DESC}", false, false));
 
 			List<LabeledValue> outputPolygonType = new ArrayList<LabeledValue>(2);
 			outputPolygonType.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.POLYGON_TYPE_DETAILED_LBL}", "esriNAOutputPolygonDetailed"));
 			outputPolygonType.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.POLYGON_TYPE_SIMPLIFIED_LBL}", "esriNAOutputPolygonSimplified"));
 			propertyDefinitions.put(OUTPUT_POLYGON_TYPE_PROPERTY, new PropertyDefinition(OUTPUT_POLYGON_TYPE_PROPERTY, PropertyType.String, "esriNAOutputPolygonSimplified", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUT_POLYGON_TYPE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.OUTPUT_POLYGON_TYPE_DESC}", false, false, outputPolygonType));
 
+			propertyDefinitions.put(GENERALIZE_TOLERANCE_PROPERTY, new PropertyDefinition(GENERALIZE_TOLERANCE_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.GENERALIZE_TOLERANCE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.GENERALIZE_TOLERANCE_DESC}", false, false));
+			propertyDefinitions.put(QUANTIZE_PROPERTY, new PropertyDefinition(QUANTIZE_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.QUANTIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.QUANTIZE_DESC}", false, false));
+			propertyDefinitions.put(PRESERVE_TOPOLOGY_PROPERTY, new PropertyDefinition(PRESERVE_TOPOLOGY_PROPERTY, PropertyType.Boolean, "false", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESERVE_TOPOLOGY_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESERVE_TOPOLOGY_DESC}", false, false));
+			propertyDefinitions.put(AGGREGATE_PROPERTY, new PropertyDefinition(AGGREGATE_PROPERTY, PropertyType.Boolean, "false", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_DESC}", false, false));
+			propertyDefinitions.put(AGGREGATE_INTERVAL_PROPERTY, new PropertyDefinition(AGGREGATE_INTERVAL_PROPERTY, PropertyType.Integer, 10, "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_INTERVAL_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_INTERVAL_DESC}", AGGREGATE_PROPERTY + "=true", false, false));
+			propertyDefinitions.put(AGGREGATE_TILE_SIZE_PROPERTY, new PropertyDefinition(AGGREGATE_TILE_SIZE_PROPERTY, PropertyType.Double, 0.05, "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_TILE_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_TILE_SIZE_DESC}", AGGREGATE_PROPERTY + "=true", false, false));
+			propertyDefinitions.put(AGGREGATE_TRACK_TIMEOUT_PROPERTY, new PropertyDefinition(AGGREGATE_TRACK_TIMEOUT_PROPERTY, PropertyType.Integer, 300, "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_TRACK_TIMEOUT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_TRACK_TIMEOUT_DESC}", AGGREGATE_PROPERTY + "=true", false, false));
+			propertyDefinitions.put(AGGREGATE_GED_NAME_PROPERTY, new PropertyDefinition(AGGREGATE_GED_NAME_PROPERTY, PropertyType.String, "ServiceAreaCoverage", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_GED_NAME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.AGGREGATE_GED_NAME_DESC}", AGGREGATE_PROPERTY + "=true", false, false));
+			propertyDefinitions.put(REACH_INDEX_PROPERTY, new PropertyDefinition(REACH_INDEX_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.REACH_INDEX_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.REACH_INDEX_DESC}", false, false));
+			propertyDefinitions.put(REACH_INDEX_TIMEOUT_PROPERTY, new PropertyDefinition(REACH_INDEX_TIMEOUT_PROPERTY, PropertyType.Integer, 300, "${com.esri.geoevent.processor.service-area-calculator-processor.REACH_INDEX_TIMEOUT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.REACH_INDEX_TIMEOUT_DESC}", PROCESSOR_MODE_PROPERTY + "=" + PROCESSOR_MODE_CALCULATE, false, false));
+			propertyDefinitions.put(QUERY_DRIVE_TIME_PROPERTY, new PropertyDefinition(QUERY_DRIVE_TIME_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.QUERY_DRIVE_TIME_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.QUERY_DRIVE_TIME_DESC}", PROCESSOR_MODE_PROPERTY + "=" + PROCESSOR_MODE_QUERY, false, false));
+			propertyDefinitions.put(QUERY_OUTPUT_FIELD_PROPERTY, new PropertyDefinition(QUERY_OUTPUT_FIELD_PROPERTY, PropertyType.String, "REACHABLE_UNITS", "${com.esri.geoevent.processor.service-area-calculator-processor.QUERY_OUTPUT_FIELD_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.QUERY_OUTPUT_FIELD_DESC}", PROCESSOR_MODE_PROPERTY + "=" + PROCESSOR_MODE_QUERY, false, false));
+			propertyDefinitions.put(CACHE_SIZE_PROPERTY, new PropertyDefinition(CACHE_SIZE_PROPERTY, PropertyType.Integer, 1000, "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_SIZE_DESC}", false, false));
+			propertyDefinitions.put(CACHE_TOLERANCE_PROPERTY, new PropertyDefinition(CACHE_TOLERANCE_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_TOLERANCE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_TOLERANCE_DESC}", false, false));
+			propertyDefinitions.put(CACHE_TTL_PROPERTY, new PropertyDefinition(CACHE_TTL_PROPERTY, PropertyType.Integer, 300, "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_TTL_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.CACHE_TTL_DESC}", false, false));
+			propertyDefinitions.put(COALESCE_PROPERTY, new PropertyDefinition(COALESCE_PROPERTY, PropertyType.Boolean, "true", "${com.esri.geoevent.processor.service-area-calculator-processor.COALESCE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.COALESCE_DESC}", false, false));
+			propertyDefinitions.put(MIN_MOVE_DISTANCE_PROPERTY, new PropertyDefinition(MIN_MOVE_DISTANCE_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.MIN_MOVE_DISTANCE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.MIN_MOVE_DISTANCE_DESC}", false, false));
+			propertyDefinitions.put(TRACK_MAX_AGE_PROPERTY, new PropertyDefinition(TRACK_MAX_AGE_PROPERTY, PropertyType.Integer, 60, "${com.esri.geoevent.processor.service-area-calculator-processor.TRACK_MAX_AGE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.TRACK_MAX_AGE_DESC}", false, false));
+			propertyDefinitions.put(TRACK_CACHE_SIZE_PROPERTY, new PropertyDefinition(TRACK_CACHE_SIZE_PROPERTY, PropertyType.Integer, 10000, "${com.esri.geoevent.processor.service-area-calculator-processor.TRACK_CACHE_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.TRACK_CACHE_SIZE_DESC}", false, false));
+			propertyDefinitions.put(TILE_STORE_FILE_PROPERTY, new PropertyDefinition(TILE_STORE_FILE_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.TILE_STORE_FILE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.TILE_STORE_FILE_DESC}", false, false));
+			propertyDefinitions.put(PRECOMPUTE_POINTS_PROPERTY, new PropertyDefinition(PRECOMPUTE_POINTS_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_POINTS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_POINTS_DESC}", false, false));
+			propertyDefinitions.put(PRECOMPUTE_EXTENT_PROPERTY, new PropertyDefinition(PRECOMPUTE_EXTENT_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_EXTENT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_EXTENT_DESC}", false, false));
+			propertyDefinitions.put(PRECOMPUTE_CELL_SIZE_PROPERTY, new PropertyDefinition(PRECOMPUTE_CELL_SIZE_PROPERTY, PropertyType.Double, 0.001, "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_CELL_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_CELL_SIZE_DESC}", false, false));
+			propertyDefinitions.put(PRECOMPUTE_WKID_PROPERTY, new PropertyDefinition(PRECOMPUTE_WKID_PROPERTY, PropertyType.Integer, 4326, "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_WKID_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRECOMPUTE_WKID_DESC}", false, false));
+			propertyDefinitions.put(RESULT_LOG_FILE_PROPERTY, new PropertyDefinition(RESULT_LOG_FILE_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_FILE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_FILE_DESC}", false, false));
+			propertyDefinitions.put(RESULT_LOG_SYNC_PROPERTY, new PropertyDefinition(RESULT_LOG_SYNC_PROPERTY, PropertyType.Integer, 1000, "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_SYNC_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_SYNC_DESC}", false, false));
+			propertyDefinitions.put(RESULT_LOG_RETENTION_PROPERTY, new PropertyDefinition(RESULT_LOG_RETENTION_PROPERTY, PropertyType.Integer, 24, "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_RETENTION_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.RESULT_LOG_RETENTION_DESC}", false, false));
+			propertyDefinitions.put(TIME_SLOT_PROPERTY, new PropertyDefinition(TIME_SLOT_PROPERTY, PropertyType.Integer, 0, "${com.esri.geoevent.processor.service-area-calculator-processor.TIME_SLOT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.TIME_SLOT_DESC}", false, false));
+			propertyDefinitions.put(PRESOLVE_HOT_CELLS_PROPERTY, new PropertyDefinition(PRESOLVE_HOT_CELLS_PROPERTY, PropertyType.Integer, 0, "${com.esri.geoevent.processor.service-area-calculator-processor.PRESOLVE_HOT_CELLS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESOLVE_HOT_CELLS_DESC}", false, false));
+			propertyDefinitions.put(PRESOLVE_LEAD_PROPERTY, new PropertyDefinition(PRESOLVE_LEAD_PROPERTY, PropertyType.Integer, 60, "${com.esri.geoevent.processor.service-area-calculator-processor.PRESOLVE_LEAD_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESOLVE_LEAD_DESC}", false, false));
+			propertyDefinitions.put(BATCH_SIZE_PROPERTY, new PropertyDefinition(BATCH_SIZE_PROPERTY, PropertyType.Integer, 1, "${com.esri.geoevent.processor.service-area-calculator-processor.BATCH_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.BATCH_SIZE_DESC}", false, false));
+			propertyDefinitions.put(BATCH_WINDOW_PROPERTY, new PropertyDefinition(BATCH_WINDOW_PROPERTY, PropertyType.Integer, 100, "${com.esri.geoevent.processor.service-area-calculator-processor.BATCH_WINDOW_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.BATCH_WINDOW_DESC}", false, false));
+			propertyDefinitions.put(ASYNC_PROPERTY, new PropertyDefinition(ASYNC_PROPERTY, PropertyType.Boolean, "false", "${com.esri.geoevent.processor.service-area-calculator-processor.ASYNC_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.ASYNC_DESC}", false, false));
+			propertyDefinitions.put(MAX_IN_FLIGHT_PROPERTY, new PropertyDefinition(MAX_IN_FLIGHT_PROPERTY, PropertyType.Integer, 8, "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_IN_FLIGHT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_IN_FLIGHT_DESC}", ASYNC_PROPERTY + "=true", false, false));
+			propertyDefinitions.put(PRESERVE_TRACK_ORDER_PROPERTY, new PropertyDefinition(PRESERVE_TRACK_ORDER_PROPERTY, PropertyType.Boolean, "true", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESERVE_TRACK_ORDER_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.PRESERVE_TRACK_ORDER_DESC}", false, false));
+			propertyDefinitions.put(WORKER_THREADS_PROPERTY, new PropertyDefinition(WORKER_THREADS_PROPERTY, PropertyType.Integer, 0, "${com.esri.geoevent.processor.service-area-calculator-processor.WORKER_THREADS_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.WORKER_THREADS_DESC}", false, false));
+			propertyDefinitions.put(WORKER_QUEUE_SIZE_PROPERTY, new PropertyDefinition(WORKER_QUEUE_SIZE_PROPERTY, PropertyType.Integer, 1000, "${com.esri.geoevent.processor.service-area-calculator-processor.WORKER_QUEUE_SIZE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.WORKER_QUEUE_SIZE_DESC}", false, false));
+			propertyDefinitions.put(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, new PropertyDefinition(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, PropertyType.Integer, 20, "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_CONNECTIONS_PER_ROUTE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_CONNECTIONS_PER_ROUTE_DESC}", false, false));
+			propertyDefinitions.put(REQUEST_TIMEOUT_PROPERTY, new PropertyDefinition(REQUEST_TIMEOUT_PROPERTY, PropertyType.Integer, 30, "${com.esri.geoevent.processor.service-area-calculator-processor.REQUEST_TIMEOUT_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.REQUEST_TIMEOUT_DESC}", false, false));
+
+			propertyDefinitions.put(MAX_REQUESTS_PER_SECOND_PROPERTY, new PropertyDefinition(MAX_REQUESTS_PER_SECOND_PROPERTY, PropertyType.Double, 0.0, "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_REQUESTS_PER_SECOND_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.MAX_REQUESTS_PER_SECOND_DESC}", false, false));
+			propertyDefinitions.put(BREAKER_FAILURE_THRESHOLD_PROPERTY, new PropertyDefinition(BREAKER_FAILURE_THRESHOLD_PROPERTY, PropertyType.Integer, 0, "${com.esri.geoevent.processor.service-area-calculator-processor.BREAKER_FAILURE_THRESHOLD_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.BREAKER_FAILURE_THRESHOLD_DESC}", false, false));
+			propertyDefinitions.put(BREAKER_OPEN_PROPERTY, new PropertyDefinition(BREAKER_OPEN_PROPERTY, PropertyType.Integer, 30, "${com.esri.geoevent.processor.service-area-calculator-processor.BREAKER_OPEN_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.BREAKER_OPEN_DESC}", false, false));
+			propertyDefinitions.put(TARGET_LATENCY_PROPERTY, new PropertyDefinition(TARGET_LATENCY_PROPERTY, PropertyType.Integer, 0, "${com.esri.geoevent.processor.service-area-calculator-processor.TARGET_LATENCY_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.TARGET_LATENCY_DESC}", false, false));
+
+			List<LabeledValue> fallback = new ArrayList<LabeledValue>(3);
+			fallback.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_NONE_LBL}", FALLBACK_NONE));
+			fallback.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_CACHED_LBL}", FALLBACK_CACHED));
+			fallback.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_APPROXIMATE_LBL}", FALLBACK_APPROXIMATE));
+			propertyDefinitions.put(FALLBACK_PROPERTY, new PropertyDefinition(FALLBACK_PROPERTY, PropertyType.String, FALLBACK_NONE, "${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_DESC}", false, false, fallback));
+			propertyDefinitions.put(FALLBACK_SPEED_PROPERTY, new PropertyDefinition(FALLBACK_SPEED_PROPERTY, PropertyType.Double, 30.0, "${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_SPEED_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.FALLBACK_SPEED_DESC}", FALLBACK_PROPERTY + "=" + FALLBACK_APPROXIMATE, false, false));
+
+			List<LabeledValue> solverBackend = new ArrayList<LabeledValue>(2);
+			solverBackend.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_BACKEND_NASERVER_LBL}", SOLVER_BACKEND_NASERVER));
+			solverBackend.add(new LabeledValue("${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_BACKEND_LOCAL_LBL}", SOLVER_BACKEND_LOCAL));
+			propertyDefinitions.put(SOLVER_BACKEND_PROPERTY, new PropertyDefinition(SOLVER_BACKEND_PROPERTY, PropertyType.String, SOLVER_BACKEND_NASERVER, "${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_BACKEND_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.SOLVER_BACKEND_DESC}", false, false, solverBackend));
+			propertyDefinitions.put(LOCAL_GRAPH_FILE_PROPERTY, new PropertyDefinition(LOCAL_GRAPH_FILE_PROPERTY, PropertyType.String, "", "${com.esri.geoevent.processor.service-area-calculator-processor.LOCAL_GRAPH_FILE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.LOCAL_GRAPH_FILE_DESC}", SOLVER_BACKEND_PROPERTY + "=" + SOLVER_BACKEND_LOCAL, false, false));
+			propertyDefinitions.put(LOCAL_BUFFER_DISTANCE_PROPERTY, new PropertyDefinition(LOCAL_BUFFER_DISTANCE_PROPERTY, PropertyType.Double, 0.0005, "${com.esri.geoevent.processor.service-area-calculator-processor.LOCAL_BUFFER_DISTANCE_LABEL}", "${com.esri.geoevent.processor.service-area-calculator-processor.LOCAL_BUFFER_DISTANCE_DESC}", SOLVER_BACKEND_PROPERTY + "=" + SOLVER_BACKEND_LOCAL, false, false));
 		}
 		catch (Exception e)
 		{
@@ -28,7 +28,6 @@ import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.core.http.GeoEventHttpClientService;
 import com.esri.ges.manager.datastore.agsconnection.ArcGISServerConnectionManager;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
-import com.esri.ges.messaging.GeoEventCreator;
 import com.esri.ges.messaging.Messaging;
 import com.esri.ges.processor.GeoEventProcessor;
 import com.esri.ges.processor.GeoEventProcessorServiceBase;
@@ -37,7 +36,7 @@ public class ServiceAreaCalculatorService extends GeoEventProcessorServiceBase
 {
 
 	private GeoEventHttpClientService			httpService;
-	private GeoEventCreator								geoEventCreator;
+	private Messaging											messaging;
 	private GeoEventDefinitionManager			geoEventDefinitionManager;
 	private ArcGISServerConnectionManager	agsConnectionManager;
 
@@ -49,7 +48,7 @@ public class ServiceAreaCalculatorService extends GeoEventProcessorServiceBase
 	@Override
 	public GeoEventProcessor create() throws ComponentException
 	{
-		return new ServiceAreaCalculator(definition, httpService, geoEventCreator, geoEventDefinitionManager, agsConnectionManager);
+		return new ServiceAreaCalculator(definition, httpService, messaging, geoEventDefinitionManager, agsConnectionManager);
 	}
 
 	public void setHttpService(GeoEventHttpClientService httpService)
@@ -59,7 +58,7 @@ public class ServiceAreaCalculatorService extends GeoEventProcessorServiceBase
 
 	public void setMessaging(Messaging messaging)
 	{
-		this.geoEventCreator = messaging.createGeoEventCreator();
+		this.messaging = messaging;
 	}
 
 	public void setGeoEventDefinitionManager(GeoEventDefinitionManager geoEventDefinitionManager)
@@ -0,0 +1,124 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Lets concurrent solves of the same key share one call. The first caller of {@link #join(Object)} for a key leads:
+ * it makes the call and hands the result to {@link Call#complete(Object)}. Callers arriving while the call is
+ * outstanding follow: they get the leader's result instead of making their own call. Once completed the key is
+ * forgotten, so results are shared only between overlapping calls; keeping them longer is the cache's job.
+ */
+public class SingleFlight<K, V>
+{
+	private final ConcurrentMap<K, CompletableFuture<V>>	calls	= new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	public Call join(K key)
+	{
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> outstanding = calls.putIfAbsent(key, future);
+		return (outstanding == null) ? new Call(key, future, true) : new Call(key, outstanding, false);
+	}
+
+	public int size()
+	{
+		return calls.size();
+	}
+
+	public class Call
+	{
+		private final K											key;
+		private final CompletableFuture<V>	future;
+		private final boolean								leader;
+
+		private Call(K key, CompletableFuture<V> future, boolean leader)
+		{
+			this.key = key;
+			this.future = future;
+			this.leader = leader;
+		}
+
+		public boolean isLeader()
+		{
+			return leader;
+		}
+
+		/**
+		 * Hands the leader's result to the followers. Must be called exactly once by every leader, also when its call
+		 * failed (with whatever result stands for a failure), or the followers wait forever.
+		 */
+		public void complete(V value)
+		{
+			calls.remove(key, future);
+			future.complete(value);
+		}
+
+		/**
+		 * Waits for the leader's result.
+		 */
+		public V await()
+		{
+			boolean interrupted = false;
+			try
+			{
+				while (true)
+				{
+					try
+					{
+						return future.get();
+					}
+					catch (InterruptedException e)
+					{
+						// the leader always completes, so finish waiting and restore the interrupt afterwards
+						interrupted = true;
+					}
+					catch (ExecutionException e)
+					{
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+			}
+			finally
+			{
+				if (interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Runs the action with the leader's result once it is available, on the thread completing the call.
+		 */
+		public void whenComplete(Consumer<V> action)
+		{
+			future.thenAccept(action);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ArcGIS Server connections a processor spreads its solver requests over. Each request goes to the healthy
+ * endpoint with the fewest outstanding requests or, when latency weighting is chosen, with the lowest expected wait
+ * (average latency times outstanding requests plus one). An endpoint failing several requests in a row is ejected for
+ * a while; when every endpoint is ejected the one due back first is used anyway. Each endpoint takes at most
+ * <code>maxOutstanding</code> requests at once, so adding a connection adds its own share of requests.
+ * <p>
+ * Every endpoint returned by {@link #select(Collection, long)} must be released with {@link Endpoint#onSuccess(long)},
+ * {@link Endpoint#onFailure()} or {@link Endpoint#release()}.
+ */
+public class SolverEndpointPool
+{
+	private static final int			EJECTION_FAILURES	= 3;
+	private static final double		LATENCY_WEIGHT		= 0.2;
+
+	private final List<Endpoint>	endpoints;
+	private final boolean					latencyWeighted;
+	private final long						ejectionNanos;
+	private final int							maxOutstanding;
+
+	public SolverEndpointPool(List<String> connectionNames, boolean latencyWeighted, long ejectionMillis, int maxOutstanding)
+	{
+		endpoints = new ArrayList<Endpoint>(connectionNames.size());
+		for (String name : connectionNames)
+			endpoints.add(new Endpoint(name));
+		this.latencyWeighted = latencyWeighted;
+		this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMillis);
+		this.maxOutstanding = Math.max(1, maxOutstanding);
+	}
+
+	public int size()
+	{
+		return endpoints.size();
+	}
+
+	public List<Endpoint> getEndpoints()
+	{
+		return endpoints;
+	}
+
+	/**
+	 * Picks an endpoint for the next request, skipping the excluded ones. If the endpoints left are all busy with
+	 * <code>maxOutstanding</code> requests, waits up to <code>maxWaitMillis</code> for one of them. Returns
+	 * <code>null</code> if every endpoint is excluded, the wait timed out or the thread was interrupted.
+	 */
+	public synchronized Endpoint select(Collection<Endpoint> exclude, long maxWaitMillis)
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		while (true)
+		{
+			long now = System.nanoTime();
+			int count = endpoints.size();
+			// start at a random endpoint so that ties do not all go to the first one
+			int offset = (count > 1) ? ThreadLocalRandom.current().nextInt(count) : 0;
+			Endpoint best = null;
+			double bestScore = Double.MAX_VALUE;
+			Endpoint soonestBack = null;
+			boolean busy = false;
+			for (int i = 0; i < count; i++)
+			{
+				Endpoint endpoint = endpoints.get((offset + i) % count);
+				if (exclude.contains(endpoint))
+					continue;
+				if (endpoint.outstanding >= maxOutstanding)
+				{
+					busy = true;
+					continue;
+				}
+				if (endpoint.isEjected(now))
+				{
+					if (soonestBack == null || endpoint.ejectedUntil - soonestBack.ejectedUntil < 0)
+						soonestBack = endpoint;
+					continue;
+				}
+				double score = endpoint.outstanding;
+				if (latencyWeighted)
+					score = endpoint.averageLatencyNanos * (score + 1);
+				if (score < bestScore)
+				{
+					best = endpoint;
+					bestScore = score;
+				}
+			}
+			if (best == null)
+				best = soonestBack;
+			if (best != null)
+			{
+				best.outstanding++;
+				return best;
+			}
+			if (!busy || deadline - now <= 0)
+				return null;
+			try
+			{
+				TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Ends a request on an endpoint and wakes the requests waiting for a free endpoint.
+	 */
+	private void finish(Endpoint endpoint)
+	{
+		endpoint.outstanding--;
+		notifyAll();
+	}
+
+	public class Endpoint
+	{
+		private final String								connectionName;
+		private volatile ResolvedConnection	connection;
+		// guarded by the pool's lock
+		private int													outstanding;
+		private double											averageLatencyNanos;
+		private boolean											ejected;
+		private long												ejectedUntil;
+		private int													consecutiveFailures;
+
+		private Endpoint(String connectionName)
+		{
+			this.connectionName = connectionName;
+		}
+
+		public String getConnectionName()
+		{
+			return connectionName;
+		}
+
+		/**
+		 * Returns the cached connection details, or <code>null</code> if they were not resolved yet.
+		 */
+		public ResolvedConnection getConnection()
+		{
+			return connection;
+		}
+
+		public void setConnection(ResolvedConnection connection)
+		{
+			this.connection = connection;
+		}
+
+		private boolean isEjected(long now)
+		{
+			return ejected && now - ejectedUntil < 0;
+		}
+
+		public void onSuccess(long latencyNanos)
+		{
+			synchronized (SolverEndpointPool.this)
+			{
+				finish(this);
+				consecutiveFailures = 0;
+				ejected = false;
+				averageLatencyNanos = (averageLatencyNanos == 0) ? latencyNanos : averageLatencyNanos + LATENCY_WEIGHT * (latencyNanos - averageLatencyNanos);
+			}
+		}
+
+		/**
+		 * Ends a request without counting it for or against the endpoint's health.
+		 */
+		public void release()
+		{
+			synchronized (SolverEndpointPool.this)
+			{
+				finish(this);
+			}
+		}
+
+		public void onFailure()
+		{
+			synchronized (SolverEndpointPool.this)
+			{
+				finish(this);
+				if (++consecutiveFailures >= EJECTION_FAILURES)
+				{
+					ejected = true;
+					ejectedUntil = System.nanoTime() + ejectionNanos;
+					consecutiveFailures = 0;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.IOException;
+
+/**
+ * A solver request answered with an error, either as an HTTP status or as the error object of a JSON reply.
+ */
+public class SolverErrorException extends IOException
+{
+	private static final long	serialVersionUID	= 1L;
+
+	private final int					code;
+
+	public SolverErrorException(int code, String message)
+	{
+		super(message);
+		this.code = code;
+	}
+
+	public int getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * Returns <code>true</code> for the ArcGIS Server codes of an invalid or expired token (498) and of a missing
+	 * token (499).
+	 */
+	public boolean isTokenError()
+	{
+		return code == 498 || code == 499;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a solver request may be sent, to keep a slow or failing NAServer from backing up the pipeline:
+ * <ul>
+ * <li>a token bucket limits the request rate,</li>
+ * <li>a circuit breaker opens after consecutive failures, rejects every request while open and then lets a single
+ * probe through (half-open) whose outcome closes or reopens it,</li>
+ * <li>an AIMD limit on concurrent requests grows by one per round of fast successes and is halved on a failure or a
+ * response slower than the target latency.</li>
+ * </ul>
+ * Every successful {@link #acquire(long)} must be followed by {@link #onSuccess(long)} or {@link #onFailure()}.
+ */
+public class SolverGuard
+{
+	public enum State
+	{
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final double	ratePerSecond;
+	private final double	burst;
+	private final int			failureThreshold;
+	private final long		openNanos;
+	private final long		targetLatencyNanos;
+	private final int			maxConcurrency;
+
+	private double				tokens;
+	private long					refilledAt;
+	private State					state			= State.CLOSED;
+	private int						consecutiveFailures;
+	private long					openedAt;
+	private boolean				probing;
+	private double				concurrencyLimit;
+	private int						inFlight;
+
+	/**
+	 * @param ratePerSecond requests per second, 0 for no rate limit
+	 * @param failureThreshold consecutive failures opening the circuit, 0 for no circuit breaker
+	 * @param targetLatencyMillis latency above which concurrency is reduced, 0 for a fixed concurrency limit
+	 */
+	public SolverGuard(double ratePerSecond, int failureThreshold, long openMillis, long targetLatencyMillis, int maxConcurrency)
+	{
+		this.ratePerSecond = ratePerSecond;
+		this.burst = Math.max(1, ratePerSecond);
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.tokens = burst;
+		this.refilledAt = System.nanoTime();
+		this.concurrencyLimit = this.maxConcurrency;
+	}
+
+	/**
+	 * Waits until a request may be sent, for at most <code>maxWaitMillis</code>. Requests over the concurrency limit or
+	 * the rate wait for their turn; requests arriving while the circuit is open, or while the half-open probe is pending,
+	 * are refused at once. Returns <code>false</code> if the request is refused or the wait timed out.
+	 */
+	public synchronized boolean acquire(long maxWaitMillis) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		while (true)
+		{
+			long now = System.nanoTime();
+			if (state == State.OPEN)
+			{
+				if (now - openedAt < openNanos)
+					return false;
+				state = State.HALF_OPEN;
+				probing = false;
+			}
+			if (state == State.HALF_OPEN && probing)
+				return false;
+
+			long waitNanos = deadline - now;
+			if (inFlight < (int) concurrencyLimit)
+			{
+				if (ratePerSecond > 0)
+				{
+					tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1e9);
+					refilledAt = now;
+				}
+				if (ratePerSecond <= 0 || tokens >= 1)
+				{
+					if (ratePerSecond > 0)
+						tokens -= 1;
+					if (state == State.HALF_OPEN)
+						probing = true;
+					inFlight++;
+					return true;
+				}
+				// sleep until the next token, unless a finishing request wakes us first
+				waitNanos = Math.min(waitNanos, (long) Math.ceil((1 - tokens) * 1e9 / ratePerSecond));
+			}
+			if (deadline - now <= 0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+		}
+	}
+
+	public synchronized void onSuccess(long latencyNanos)
+	{
+		inFlight--;
+		notifyAll();
+		consecutiveFailures = 0;
+		if (state == State.HALF_OPEN)
+			state = State.CLOSED;
+		probing = false;
+
+		if (targetLatencyNanos > 0 && latencyNanos > targetLatencyNanos)
+			decrease();
+		else
+			concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+	}
+
+	public synchronized void onFailure()
+	{
+		inFlight--;
+		notifyAll();
+		decrease();
+		probing = false;
+		if (state == State.HALF_OPEN || (failureThreshold > 0 && ++consecutiveFailures >= failureThreshold))
+		{
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+			consecutiveFailures = 0;
+		}
+	}
+
+	public synchronized State getState()
+	{
+		// an open circuit whose wait is over is reported half-open even before the next request arrives
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos)
+			return State.HALF_OPEN;
+		return state;
+	}
+
+	public synchronized double getConcurrencyLimit()
+	{
+		return concurrencyLimit;
+	}
+
+	private void decrease()
+	{
+		if (targetLatencyNanos > 0)
+			concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+
+import com.esri.ges.core.http.GeoEventHttpClient;
+import com.esri.ges.core.http.GeoEventHttpClientService;
+
+/**
+ * HTTP client shared by every request a processor sends to the solver. It is created once from GeoEvent Server's
+ * HTTP client service, so that requests keep the server's certificate trust and proxy settings and reuse its
+ * keep-alive connections instead of opening a new client per event. Replies are requested gzip compressed.
+ */
+public class SolverHttpClient implements Closeable
+{
+	private final GeoEventHttpClient	client;
+	private final int									requestTimeoutMillis;
+
+	public SolverHttpClient(GeoEventHttpClientService httpService, int requestTimeoutMillis)
+	{
+		this.client = httpService.createNewClient();
+		this.requestTimeoutMillis = requestTimeoutMillis;
+	}
+
+	/**
+	 * Sends the request and hands the (decoded) response body stream to the reader. The connection is released once
+	 * the reader returns.
+	 */
+	public <T> T execute(HttpRequestBase request, ReplyReader<T> reader) throws IOException
+	{
+		request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		try (CloseableHttpResponse response = send(request))
+		{
+			StatusLine status = response.getStatusLine();
+			HttpEntity entity = response.getEntity();
+			if (status.getStatusCode() >= 300 || entity == null)
+			{
+				EntityUtils.consumeQuietly(entity);
+				throw new SolverErrorException(status.getStatusCode(), status.toString());
+			}
+			try (InputStream in = decode(entity))
+			{
+				return reader.read(in);
+			}
+		}
+	}
+
+	private CloseableHttpResponse send(HttpRequestBase request) throws IOException
+	{
+		try
+		{
+			return client.execute(request, requestTimeoutMillis);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the body of the entity, unzipping it unless the client already has.
+	 */
+	private static InputStream decode(HttpEntity entity) throws IOException
+	{
+		Header encoding = entity.getContentEncoding();
+		InputStream in = entity.getContent();
+		return (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) ? new GZIPInputStream(in) : in;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		client.close();
+	}
+
+	public interface ReplyReader<T>
+	{
+		T read(InputStream in) throws IOException;
+	}
+}
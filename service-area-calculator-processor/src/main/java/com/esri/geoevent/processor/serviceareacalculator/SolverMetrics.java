@@ -0,0 +1,474 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counters and latency histograms of the solver requests sent by one processor. Solver latency runs from sending the
+ * request to receiving the response headers, so it is the time spent by NAServer and the network; parse time covers
+ * reading and parsing the response body. Times are recorded in microseconds. Latency statistics cover the last
+ * completed interval of at least a minute, so that they follow recent behaviour rather than the processor's lifetime.
+ * <p>
+ * The metrics are published as an MBean named
+ * <code>com.esri.geoevent.processor:type=ServiceAreaCalculator,name=&lt;processor id&gt;</code>.
+ */
+public class SolverMetrics implements SolverMetricsMBean
+{
+	private static final long		MAX_TRACKABLE_MICROS	= TimeUnit.MINUTES.toMicros(10);
+	private static final long		INTERVAL_NANOS				= TimeUnit.MINUTES.toNanos(1);
+
+	private final LongAdder			requests							= new LongAdder();
+	private final LongAdder			successes							= new LongAdder();
+	private final LongAdder			failures							= new LongAdder();
+	private final LongAdder			timeouts							= new LongAdder();
+	private final LongAdder			noPolygons						= new LongAdder();
+	private final LongAdder			droppedEvents					= new LongAdder();
+	private final LongAdder			rejected							= new LongAdder();
+	private final LongAdder			fallbacks							= new LongAdder();
+	private final LongAdder			coalesced							= new LongAdder();
+	private final LongAdder			requestBytes					= new LongAdder();
+	private final LongAdder			responseBytes					= new LongAdder();
+	private final LongAdder			verticesIn						= new LongAdder();
+	private final LongAdder			verticesOut						= new LongAdder();
+	private final IntervalHistogram	solverLatency			= new IntervalHistogram();
+	private final IntervalHistogram	parseTime					= new IntervalHistogram();
+
+	private volatile LongSupplier	cacheHits						= () -> 0;
+	private volatile LongSupplier	cacheMisses					= () -> 0;
+	private volatile LongSupplier	cacheSize						= () -> 0;
+	private volatile LongSupplier	inFlightRequests		= () -> 0;
+	private volatile LongSupplier	pendingBatchSize		= () -> 0;
+	private volatile LongSupplier	queuedEvents				= () -> 0;
+	private volatile LongSupplier	resultLogDropped		= () -> 0;
+	private volatile Supplier<String>	circuitBreakerState	= () -> "";
+	private volatile DoubleSupplier	concurrencyLimit		= () -> 0;
+	private ObjectName						objectName;
+
+	public void recordRequest(long bytes)
+	{
+		requests.increment();
+		requestBytes.add(bytes);
+	}
+
+	public void recordSolverLatency(long nanos)
+	{
+		solverLatency.record(nanos);
+	}
+
+	public void recordParseTime(long nanos)
+	{
+		parseTime.record(nanos);
+	}
+
+	public void recordSuccess()
+	{
+		successes.increment();
+	}
+
+	public void recordFailure()
+	{
+		failures.increment();
+	}
+
+	public void recordTimeout()
+	{
+		timeouts.increment();
+	}
+
+	public void recordNoPolygon()
+	{
+		noPolygons.increment();
+	}
+
+	public void recordDroppedEvent()
+	{
+		droppedEvents.increment();
+	}
+
+	public void recordRejected()
+	{
+		rejected.increment();
+	}
+
+	public void recordFallback()
+	{
+		fallbacks.increment();
+	}
+
+	public void recordCoalesced()
+	{
+		coalesced.increment();
+	}
+
+	public void recordGeneralization(long verticesBefore, long verticesAfter)
+	{
+		verticesIn.add(verticesBefore);
+		verticesOut.add(verticesAfter);
+	}
+
+	/**
+	 * Wraps a response body so that the bytes read from it are counted.
+	 */
+	public InputStream countResponseBytes(InputStream in)
+	{
+		return new FilterInputStream(in)
+			{
+				@Override
+				public int read() throws IOException
+				{
+					int b = super.read();
+					if (b >= 0)
+						responseBytes.increment();
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException
+				{
+					int n = super.read(b, off, len);
+					if (n > 0)
+						responseBytes.add(n);
+					return n;
+				}
+			};
+	}
+
+	public void setCacheGauges(LongSupplier hits, LongSupplier misses, LongSupplier size)
+	{
+		cacheHits = hits;
+		cacheMisses = misses;
+		cacheSize = size;
+	}
+
+	public void setInFlightGauge(LongSupplier inFlight)
+	{
+		inFlightRequests = inFlight;
+	}
+
+	public void setPendingBatchGauge(LongSupplier pending)
+	{
+		pendingBatchSize = pending;
+	}
+
+	public void setQueuedEventsGauge(LongSupplier queued)
+	{
+		queuedEvents = queued;
+	}
+
+	public void setResultLogGauge(LongSupplier dropped)
+	{
+		resultLogDropped = dropped;
+	}
+
+	public void setGuardGauges(Supplier<String> state, DoubleSupplier limit)
+	{
+		circuitBreakerState = state;
+		concurrencyLimit = limit;
+	}
+
+	/**
+	 * Publishes the metrics on the platform MBean server, replacing an MBean of the same processor left registered.
+	 */
+	public synchronized void register(String processorId) throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.esri.geoevent.processor:type=ServiceAreaCalculator,name=" + ObjectName.quote(String.valueOf(processorId)));
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		server.registerMBean(this, name);
+		objectName = name;
+	}
+
+	public synchronized void unregister() throws JMException
+	{
+		if (objectName != null)
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+
+	@Override
+	public long getRequestCount()
+	{
+		return requests.sum();
+	}
+
+	@Override
+	public long getSuccessCount()
+	{
+		return successes.sum();
+	}
+
+	@Override
+	public long getFailureCount()
+	{
+		return failures.sum();
+	}
+
+	@Override
+	public long getTimeoutCount()
+	{
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getNoPolygonCount()
+	{
+		return noPolygons.sum();
+	}
+
+	@Override
+	public long getDroppedEventCount()
+	{
+		return droppedEvents.sum();
+	}
+
+	@Override
+	public long getRejectedCount()
+	{
+		return rejected.sum();
+	}
+
+	@Override
+	public long getFallbackCount()
+	{
+		return fallbacks.sum();
+	}
+
+	@Override
+	public long getCoalescedCount()
+	{
+		return coalesced.sum();
+	}
+
+	@Override
+	public long getRequestBytes()
+	{
+		return requestBytes.sum();
+	}
+
+	@Override
+	public long getResponseBytes()
+	{
+		return responseBytes.sum();
+	}
+
+	@Override
+	public long getVerticesBeforeGeneralization()
+	{
+		return verticesIn.sum();
+	}
+
+	@Override
+	public long getVerticesAfterGeneralization()
+	{
+		return verticesOut.sum();
+	}
+
+	@Override
+	public double getSolverLatencyMeanMillis()
+	{
+		return solverLatency.get().getMean() / 1000.0;
+	}
+
+	@Override
+	public double getSolverLatencyP50Millis()
+	{
+		return solverLatency.get().getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getSolverLatencyP99Millis()
+	{
+		return solverLatency.get().getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getSolverLatencyP999Millis()
+	{
+		return solverLatency.get().getValueAtPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getSolverLatencyMaxMillis()
+	{
+		return solverLatency.get().getMaxValue() / 1000.0;
+	}
+
+	@Override
+	public double getParseTimeMeanMillis()
+	{
+		return parseTime.get().getMean() / 1000.0;
+	}
+
+	@Override
+	public double getParseTimeP50Millis()
+	{
+		return parseTime.get().getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getParseTimeP99Millis()
+	{
+		return parseTime.get().getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getParseTimeMaxMillis()
+	{
+		return parseTime.get().getMaxValue() / 1000.0;
+	}
+
+	@Override
+	public long getCacheHits()
+	{
+		return cacheHits.getAsLong();
+	}
+
+	@Override
+	public long getCacheMisses()
+	{
+		return cacheMisses.getAsLong();
+	}
+
+	@Override
+	public long getCacheSize()
+	{
+		return cacheSize.getAsLong();
+	}
+
+	@Override
+	public long getInFlightRequests()
+	{
+		return inFlightRequests.getAsLong();
+	}
+
+	@Override
+	public long getPendingBatchSize()
+	{
+		return pendingBatchSize.getAsLong();
+	}
+
+	@Override
+	public long getQueuedEvents()
+	{
+		return queuedEvents.getAsLong();
+	}
+
+	@Override
+	public long getResultLogDroppedCount()
+	{
+		return resultLogDropped.getAsLong();
+	}
+
+	@Override
+	public String getCircuitBreakerState()
+	{
+		return circuitBreakerState.get();
+	}
+
+	@Override
+	public double getConcurrencyLimit()
+	{
+		return concurrencyLimit.getAsDouble();
+	}
+
+	@Override
+	public void reset()
+	{
+		requests.reset();
+		successes.reset();
+		failures.reset();
+		timeouts.reset();
+		noPolygons.reset();
+		droppedEvents.reset();
+		rejected.reset();
+		fallbacks.reset();
+		coalesced.reset();
+		requestBytes.reset();
+		responseBytes.reset();
+		verticesIn.reset();
+		verticesOut.reset();
+		solverLatency.reset();
+		parseTime.reset();
+	}
+
+	/**
+	 * Latency histogram recorded into without locking and read one interval at a time, so that it is never read while
+	 * values are being recorded into it.
+	 */
+	private static class IntervalHistogram
+	{
+		private final Recorder	recorder	= new Recorder(MAX_TRACKABLE_MICROS, 3);
+		private Histogram				interval;
+		private long						intervalStart	= System.nanoTime();
+
+		void record(long nanos)
+		{
+			recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_TRACKABLE_MICROS));
+		}
+
+		/**
+		 * Returns the histogram of the last completed interval, starting a new interval if the current one has lasted
+		 * long enough. A published histogram is never handed back to the recorder, since readers may still hold it.
+		 */
+		synchronized Histogram get()
+		{
+			long now = System.nanoTime();
+			if (interval == null || now - intervalStart >= INTERVAL_NANOS)
+			{
+				interval = recorder.getIntervalHistogram();
+				intervalStart = now;
+			}
+			return interval;
+		}
+
+		synchronized void reset()
+		{
+			recorder.reset();
+			interval = null;
+			intervalStart = System.nanoTime();
+		}
+	}
+}
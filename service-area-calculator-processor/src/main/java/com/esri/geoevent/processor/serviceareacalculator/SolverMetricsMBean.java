@@ -0,0 +1,95 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+/**
+ * JMX view of the solver metrics of one processor. Times are in milliseconds.
+ */
+public interface SolverMetricsMBean
+{
+	long getRequestCount();
+
+	long getSuccessCount();
+
+	long getFailureCount();
+
+	long getTimeoutCount();
+
+	long getNoPolygonCount();
+
+	long getDroppedEventCount();
+
+	long getRejectedCount();
+
+	long getFallbackCount();
+
+	long getCoalescedCount();
+
+	long getRequestBytes();
+
+	long getResponseBytes();
+
+	long getVerticesBeforeGeneralization();
+
+	long getVerticesAfterGeneralization();
+
+	double getSolverLatencyMeanMillis();
+
+	double getSolverLatencyP50Millis();
+
+	double getSolverLatencyP99Millis();
+
+	double getSolverLatencyP999Millis();
+
+	double getSolverLatencyMaxMillis();
+
+	double getParseTimeMeanMillis();
+
+	double getParseTimeP50Millis();
+
+	double getParseTimeP99Millis();
+
+	double getParseTimeMaxMillis();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	long getCacheSize();
+
+	long getInFlightRequests();
+
+	long getPendingBatchSize();
+
+	long getQueuedEvents();
+
+	long getResultLogDroppedCount();
+
+	String getCircuitBreakerState();
+
+	double getConcurrencyLimit();
+
+	void reset();
+}
@@ -0,0 +1,280 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads a solveServiceArea reply token by token, building the polygons straight from the ring coordinates without
+ * materializing the JSON tree or re-parsing each geometry.
+ */
+public class SolverReplyParser
+{
+	private static final JsonFactory	JSON_FACTORY	= new JsonFactory();
+
+	private SolverReplyParser()
+	{
+	}
+
+	/**
+	 * Returns the polygons indexed by facility and break, or <code>null</code> when the reply has no saPolygons feature
+	 * set. Polygons are matched to facilities by FacilityID, which numbers the facilities from 1 in the order they were
+	 * sent, and to breaks by ToBreak. Polygons missing either attribute, or whose values match no facility or break, are
+	 * left out.
+	 */
+	public static MapGeometry[][] parse(InputStream in, int facilityCount, double[] breaks) throws IOException
+	{
+		try (JsonParser parser = JSON_FACTORY.createParser(in))
+		{
+			expect(parser.nextToken(), JsonToken.START_OBJECT);
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("saPolygons".equals(field))
+					return parseFeatureSet(parser, facilityCount, breaks);
+				else if ("error".equals(field))
+					throw parseError(parser);
+				else
+					parser.skipChildren();
+			}
+			return null;
+		}
+	}
+
+	private static MapGeometry[][] parseFeatureSet(JsonParser parser, int facilityCount, double[] breaks) throws IOException
+	{
+		Polygon[][] polygons = new Polygon[facilityCount][breaks.length];
+		int wkid = 0;
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("spatialReference".equals(field))
+				wkid = parseWkid(parser);
+			else if ("features".equals(field))
+				parseFeatures(parser, polygons, breaks);
+			else
+				parser.skipChildren();
+		}
+
+		SpatialReference sr = (wkid != 0) ? SpatialReference.create(wkid) : null;
+		MapGeometry[][] result = new MapGeometry[facilityCount][breaks.length];
+		for (int i = 0; i < facilityCount; i++)
+		{
+			for (int j = 0; j < breaks.length; j++)
+			{
+				if (polygons[i][j] != null)
+					result[i][j] = new MapGeometry(polygons[i][j], sr);
+			}
+		}
+		return result;
+	}
+
+	private static void parseFeatures(JsonParser parser, Polygon[][] polygons, double[] breaks) throws IOException
+	{
+		expect(parser.getCurrentToken(), JsonToken.START_ARRAY);
+		int[] key = new int[2];
+		while (parser.nextToken() == JsonToken.START_OBJECT)
+		{
+			Polygon polygon = null;
+			// a feature without FacilityID or ToBreak cannot be told apart from the others of a batch, so it is skipped
+			key[0] = -1;
+			key[1] = -1;
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("geometry".equals(field))
+					polygon = parsePolygon(parser);
+				else if ("attributes".equals(field))
+					parseAttributes(parser, breaks, key);
+				else
+					parser.skipChildren();
+			}
+
+			int facility = key[0];
+			int breakIndex = key[1];
+			if (polygon != null && facility >= 0 && facility < polygons.length && breakIndex >= 0 && polygons[facility][breakIndex] == null)
+				polygons[facility][breakIndex] = polygon;
+		}
+	}
+
+	/**
+	 * Reads the facility index (FacilityID - 1) and the index of the break matching ToBreak into <code>key</code>.
+	 */
+	private static void parseAttributes(JsonParser parser, double[] breaks, int[] key) throws IOException
+	{
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("FacilityID".equals(field))
+				key[0] = parser.getValueAsInt(0) - 1;
+			else if ("ToBreak".equals(field))
+				key[1] = breakIndex(breaks, parser.getValueAsDouble());
+			else
+				parser.skipChildren();
+		}
+	}
+
+	private static int breakIndex(double[] breaks, double toBreak)
+	{
+		for (int i = 0; i < breaks.length; i++)
+		{
+			if (Math.abs(breaks[i] - toBreak) < 1e-6)
+				return i;
+		}
+		return -1;
+	}
+
+	private static Polygon parsePolygon(JsonParser parser) throws IOException
+	{
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+		{
+			parser.skipChildren();
+			return null;
+		}
+
+		Polygon polygon = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("rings".equals(field))
+				polygon = parseRings(parser);
+			else
+				parser.skipChildren();
+		}
+		return polygon;
+	}
+
+	private static Polygon parseRings(JsonParser parser) throws IOException
+	{
+		Polygon polygon = new Polygon();
+		expect(parser.getCurrentToken(), JsonToken.START_ARRAY);
+		while (parser.nextToken() == JsonToken.START_ARRAY)
+		{
+			boolean first = true;
+			double startX = 0, startY = 0, lastX = 0, lastY = 0;
+			boolean pending = false;
+			while (parser.nextToken() == JsonToken.START_ARRAY)
+			{
+				parser.nextToken();
+				double x = parser.getDoubleValue();
+				parser.nextToken();
+				double y = parser.getDoubleValue();
+				// skip z and m values
+				while (parser.nextToken() != JsonToken.END_ARRAY)
+					;
+
+				if (first)
+				{
+					polygon.startPath(x, y);
+					startX = x;
+					startY = y;
+					first = false;
+				}
+				else
+				{
+					// hold each vertex back one step so the closing vertex, which repeats the first, is not added
+					if (pending)
+						polygon.lineTo(lastX, lastY);
+					lastX = x;
+					lastY = y;
+					pending = true;
+				}
+			}
+			if (pending && (lastX != startX || lastY != startY))
+				polygon.lineTo(lastX, lastY);
+		}
+		return polygon.isEmpty() ? null : polygon;
+	}
+
+	private static int parseWkid(JsonParser parser) throws IOException
+	{
+		int wkid = 0;
+		int latestWkid = 0;
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("wkid".equals(field))
+				wkid = parser.getValueAsInt();
+			else if ("latestWkid".equals(field))
+				latestWkid = parser.getValueAsInt();
+			else
+				parser.skipChildren();
+		}
+		return (wkid != 0) ? wkid : latestWkid;
+	}
+
+	private static SolverErrorException parseError(JsonParser parser) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		int code = 0;
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("code".equals(field))
+			{
+				code = parser.getValueAsInt();
+				sb.insert(0, parser.getText() + ": ");
+			}
+			else if ("message".equals(field))
+				sb.append(parser.getText());
+			else if ("details".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY)
+			{
+				while (parser.nextToken() != JsonToken.END_ARRAY)
+				{
+					sb.append(' ').append(parser.getText());
+					parser.skipChildren();
+				}
+			}
+			else
+				parser.skipChildren();
+		}
+		return new SolverErrorException(code, sb.toString());
+	}
+
+	private static void expect(JsonToken actual, JsonToken expected) throws IOException
+	{
+		if (actual != expected)
+			throw new IOException("Unexpected token " + actual + ", expected " + expected + ".");
+	}
+}
@@ -0,0 +1,109 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+
+/**
+ * Remembers the last solved point and areas of every track, so that an event whose track has not moved far enough
+ * since the last solve can reuse the previous areas. Tracks are evicted least recently used first, and their areas
+ * are not reused once older than the maximum age.
+ * <p>
+ * Distances are geodesic meters for geographic coordinates and map units otherwise.
+ */
+public class TrackMovementFilter
+{
+	private final ExpiringCache<String, TrackArea>	tracks;
+	private final double														minimumDistance;
+
+	public TrackMovementFilter(int maxTracks, long maxAgeMillis, double minimumDistance)
+	{
+		this.tracks = new ExpiringCache<String, TrackArea>(maxTracks, maxAgeMillis);
+		this.minimumDistance = minimumDistance;
+	}
+
+	/**
+	 * Returns the areas last solved for the track if the point is within the minimum distance of the point they were
+	 * solved for, otherwise <code>null</code>.
+	 */
+	public MapGeometry[] get(String trackId, MapGeometry point)
+	{
+		if (trackId == null || !(point.getGeometry() instanceof Point))
+			return null;
+		TrackArea last = tracks.get(trackId);
+		if (last == null || !sameSpatialReference(last.point.getSpatialReference(), point.getSpatialReference()))
+			return null;
+		return (distance((Point) last.point.getGeometry(), (Point) point.getGeometry(), point.getSpatialReference()) < minimumDistance) ? last.areas : null;
+	}
+
+	public void put(String trackId, MapGeometry point, MapGeometry[] areas)
+	{
+		if (trackId != null && point.getGeometry() instanceof Point)
+			tracks.put(trackId, new TrackArea(point, areas));
+	}
+
+	public void clear()
+	{
+		tracks.clear();
+	}
+
+	private static double distance(Point from, Point to, SpatialReference sr)
+	{
+		if (isGeographic(sr))
+			return GeometryEngine.geodesicDistanceOnWGS84(from, to);
+		return Math.hypot(to.getX() - from.getX(), to.getY() - from.getY());
+	}
+
+	static boolean isGeographic(SpatialReference sr)
+	{
+		if (sr == null)
+			return false;
+		int wkid = sr.getID();
+		if (wkid > 0)
+			return (wkid >= 4000 && wkid < 5000) || (wkid >= 37000 && wkid < 38000) || (wkid >= 104000 && wkid < 105000);
+		return sr.getText() != null && sr.getText().trim().toUpperCase().startsWith("GEOGCS");
+	}
+
+	private static boolean sameSpatialReference(SpatialReference a, SpatialReference b)
+	{
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	private static class TrackArea
+	{
+		final MapGeometry		point;
+		final MapGeometry[]	areas;
+
+		TrackArea(MapGeometry point, MapGeometry[] areas)
+		{
+			this.point = point;
+			this.areas = areas;
+		}
+	}
+}
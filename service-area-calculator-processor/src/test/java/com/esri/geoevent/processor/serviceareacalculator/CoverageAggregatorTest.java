@@ -0,0 +1,121 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
+
+public class CoverageAggregatorTest
+{
+	@Test
+	public void testCoverageIsTheUnionAcrossTiles()
+	{
+		CoverageAggregator aggregator = new CoverageAggregator(1.0, 0);
+		// both squares span several tiles and overlap by a 1 x 2 strip
+		aggregator.update("a", square(0.5, 0.5, 2));
+		aggregator.update("b", square(1.5, 0.5, 2));
+
+		CoverageAggregator.Coverage coverage = aggregator.getCoverage();
+		assertEquals(2, coverage.getTrackCount());
+		assertEquals(6.0, area(coverage), 1e-9);
+	}
+
+	@Test
+	public void testReplacedAreaLeavesItsOldTiles()
+	{
+		CoverageAggregator aggregator = new CoverageAggregator(1.0, 0);
+		aggregator.update("a", square(0, 0, 1));
+		aggregator.update("b", square(10, 10, 1));
+		aggregator.getCoverage();
+
+		aggregator.update("a", square(5, 5, 0.5));
+		CoverageAggregator.Coverage coverage = aggregator.getCoverage();
+		assertEquals(2, coverage.getTrackCount());
+		assertEquals(1.25, area(coverage), 1e-9);
+	}
+
+	@Test
+	public void testSameAreaAgainKeepsTheCoverage()
+	{
+		CoverageAggregator aggregator = new CoverageAggregator(1.0, 0);
+		MapGeometry area = square(0, 0, 1);
+		aggregator.update("a", area);
+		CoverageAggregator.Coverage first = aggregator.getCoverage();
+
+		aggregator.update("a", area);
+		assertSame(first, aggregator.getCoverage());
+	}
+
+	@Test
+	public void testExpiryOfTheLastMemberClearsTheCoverage() throws InterruptedException
+	{
+		CoverageAggregator aggregator = new CoverageAggregator(1.0, 50);
+		aggregator.update("a", square(0.2, 0.2, 0.5));
+		assertEquals(1, aggregator.getCoverage().getTrackCount());
+
+		Thread.sleep(100);
+		CoverageAggregator.Coverage coverage = aggregator.getCoverage();
+		assertEquals(0, coverage.getTrackCount());
+		assertTrue(coverage.getArea().getGeometry().isEmpty());
+	}
+
+	@Test
+	public void testExpiryOfASoleTileMemberRemovesItsArea() throws InterruptedException
+	{
+		CoverageAggregator aggregator = new CoverageAggregator(1.0, 600);
+		aggregator.update("a", square(0.2, 0.2, 0.5));
+		Thread.sleep(400);
+		aggregator.update("b", square(5.2, 5.2, 0.5));
+		assertEquals(0.5, area(aggregator.getCoverage()), 1e-9);
+
+		// only a has timed out; it was the only member of its tile
+		Thread.sleep(400);
+		CoverageAggregator.Coverage coverage = aggregator.getCoverage();
+		assertEquals(1, coverage.getTrackCount());
+		assertEquals(0.25, area(coverage), 1e-9);
+	}
+
+	private static MapGeometry square(double x, double y, double size)
+	{
+		Polygon polygon = new Polygon();
+		polygon.startPath(x, y);
+		polygon.lineTo(x, y + size);
+		polygon.lineTo(x + size, y + size);
+		polygon.lineTo(x + size, y);
+		return new MapGeometry(polygon, SpatialReference.create(4326));
+	}
+
+	private static double area(CoverageAggregator.Coverage coverage)
+	{
+		return coverage.getArea().getGeometry().calculateArea2D();
+	}
+}
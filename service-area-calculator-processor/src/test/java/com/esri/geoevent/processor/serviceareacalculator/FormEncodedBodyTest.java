@@ -0,0 +1,101 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
+
+public class FormEncodedBodyTest
+{
+	@Test
+	public void testFacilitiesAreNamedInListOrderWithoutZ() throws Exception
+	{
+		MapGeometry first = new MapGeometry(new Point(-117.5, 34.25, 100), SpatialReference.create(4326));
+		MapGeometry second = new MapGeometry(new Point(1, 2), SpatialReference.create(102100));
+		String body = FormEncodedBody.create().addFacilities(Arrays.asList(first, second)).toString();
+
+		assertEquals("facilities=", body.substring(0, 11));
+		String json = "{\"type\":\"features\",\"features\":["
+				+ "{\"geometry\":{\"x\":-117.5,\"y\":34.25,\"spatialReference\":{\"wkid\":4326}},\"attributes\":{\"Name\":\"1\"}},"
+				+ "{\"geometry\":{\"x\":1.0,\"y\":2.0,\"spatialReference\":{\"wkid\":102100}},\"attributes\":{\"Name\":\"2\"}}]}";
+		assertEquals(json, URLDecoder.decode(body.substring(11), "UTF-8"));
+		assertEquals(URLEncoder.encode(json, "UTF-8"), body.substring(11));
+	}
+
+	@Test
+	public void testParametersAreEncodedLikeUrlEncoder() throws Exception
+	{
+		String value = "a b&c=d/é€😀*._-~";
+		String body = FormEncodedBody.create().add("f", "json").add("token", value).toString();
+
+		assertEquals("f=json&token=" + URLEncoder.encode(value, "UTF-8"), body);
+	}
+
+	@Test
+	public void testBufferIsClearedForTheNextBody()
+	{
+		FormEncodedBody.create().add("a", "1");
+		assertEquals("b=2", FormEncodedBody.create().add("b", "2").toString());
+	}
+
+	@Test
+	public void testNonFiniteCoordinatesAreRejected()
+	{
+		assertRejected(new MapGeometry(new Point(Double.NaN, 1), SpatialReference.create(4326)));
+		assertRejected(new MapGeometry(new Point(1, Double.POSITIVE_INFINITY), SpatialReference.create(4326)));
+		assertRejected(new MapGeometry(new Point(), SpatialReference.create(4326)));
+	}
+
+	@Test
+	public void testNonPointsAreRejected()
+	{
+		assertRejected(new MapGeometry(new Polygon(), SpatialReference.create(4326)));
+	}
+
+	private static void assertRejected(MapGeometry facility)
+	{
+		MapGeometry valid = new MapGeometry(new Point(1, 2), SpatialReference.create(4326));
+		try
+		{
+			FormEncodedBody.create().addFacilities(Arrays.asList(valid, facility));
+			fail("Expected the facility to be rejected.");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
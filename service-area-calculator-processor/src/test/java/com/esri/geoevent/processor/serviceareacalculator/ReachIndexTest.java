@@ -0,0 +1,237 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
+
+public class ReachIndexTest
+{
+	private static final double[]	ONE_BREAK	= new double[] { 5 };
+	private static int						counter;
+	private ReachIndex						index;
+
+	@Before
+	public void setUp()
+	{
+		// the registry is shared by the whole JVM, so every test gets an index of its own
+		index = ReachIndex.acquire("ReachIndexTest-" + (++counter));
+	}
+
+	@After
+	public void tearDown()
+	{
+		ReachIndex.release(index, "p1");
+	}
+
+	@Test
+	public void testQueryMatchesBruteForceBeforeAndAfterPacking() throws InterruptedException
+	{
+		Random random = new Random(42);
+		int count = 500;
+		double[][] squares = new double[count][];
+		for (int i = 0; i < count; i++)
+		{
+			squares[i] = new double[] { random.nextDouble() * 100, random.nextDouble() * 100, 1 + random.nextDouble() * 9 };
+			index.update("p1", "t" + i, point(squares[i][0], squares[i][1]), areas(square(squares[i][0], squares[i][1], squares[i][2])), ONE_BREAK, 0);
+		}
+		assertEquals(count, index.size());
+		assertMatchesBruteForce(squares, new Random(7));
+
+		// the oldest change is stale after a second, so the next query packs everything into the tree
+		Thread.sleep(1100);
+		index.query(point(-1, -1), 0);
+		Thread.sleep(200);
+		assertMatchesBruteForce(squares, new Random(7));
+	}
+
+	@Test
+	public void testReplacedAreaIsFoundBeforePacking() throws InterruptedException
+	{
+		index.update("p1", "a", point(0, 0), areas(square(0, 0, 1)), ONE_BREAK, 0);
+		Thread.sleep(1100);
+		index.query(point(-1, -1), 0);
+		Thread.sleep(200);
+
+		index.update("p1", "a", point(10, 10), areas(square(10, 10, 1)), ONE_BREAK, 0);
+		assertEquals(Collections.<String> emptyList(), index.query(point(0.5, 0.5), 0));
+		assertEquals(Arrays.asList("a"), index.query(point(10.5, 10.5), 0));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testHoleIsOutside()
+	{
+		Polygon ring = new Polygon();
+		ring.startPath(0, 0);
+		ring.lineTo(0, 10);
+		ring.lineTo(10, 10);
+		ring.lineTo(10, 0);
+		ring.startPath(4, 4);
+		ring.lineTo(6, 4);
+		ring.lineTo(6, 6);
+		ring.lineTo(4, 6);
+		index.update("p1", "a", point(1, 1), areas(new MapGeometry(ring, SpatialReference.create(4326))), ONE_BREAK, 0);
+
+		assertEquals(Arrays.asList("a"), index.query(point(2, 2), 0));
+		assertEquals(Collections.<String> emptyList(), index.query(point(5, 5), 0));
+	}
+
+	@Test
+	public void testConcaveAreaExcludesItsNotch()
+	{
+		// an L shape: the upper right quarter of the bounding square is not reached
+		Polygon shape = new Polygon();
+		shape.startPath(0, 0);
+		shape.lineTo(0, 10);
+		shape.lineTo(5, 10);
+		shape.lineTo(5, 5);
+		shape.lineTo(10, 5);
+		shape.lineTo(10, 0);
+		index.update("p1", "a", point(1, 1), areas(new MapGeometry(shape, SpatialReference.create(4326))), ONE_BREAK, 0);
+
+		assertEquals(Arrays.asList("a"), index.query(point(2, 8), 0));
+		assertEquals(Arrays.asList("a"), index.query(point(8, 2), 0));
+		assertEquals(Collections.<String> emptyList(), index.query(point(8, 8), 0));
+	}
+
+	@Test
+	public void testLargestBreakWithinTheDriveTimeIsUsed()
+	{
+		index.update("p1", "a", point(0, 0), areas(square(0, 0, 1), square(0, 0, 5)), new double[] { 5, 10 }, 0);
+
+		assertEquals(Arrays.asList("a"), index.query(point(0.5, 0.5), 5));
+		assertEquals(Collections.<String> emptyList(), index.query(point(3, 3), 5));
+		assertEquals(Collections.<String> emptyList(), index.query(point(3, 3), 7));
+		assertEquals(Arrays.asList("a"), index.query(point(3, 3), 10));
+		assertEquals(Arrays.asList("a"), index.query(point(3, 3), 15));
+		// no break is short enough
+		assertEquals(Collections.<String> emptyList(), index.query(point(0.5, 0.5), 2));
+		// 0 uses the first break
+		assertEquals(Collections.<String> emptyList(), index.query(point(3, 3), 0));
+	}
+
+	@Test
+	public void testTimedOutTrackIsNotFound() throws InterruptedException
+	{
+		index.update("p1", "a", point(0, 0), areas(square(0, 0, 1)), ONE_BREAK, 50);
+		assertEquals(Arrays.asList("a"), index.query(point(0.5, 0.5), 0));
+
+		Thread.sleep(100);
+		assertEquals(Collections.<String> emptyList(), index.query(point(0.5, 0.5), 0));
+	}
+
+	@Test
+	public void testOtherSpatialReferenceIsSkipped()
+	{
+		index.update("p1", "a", point(0, 0), areas(square(0, 0, 1)), ONE_BREAK, 0);
+
+		Point location = new Point(0.5, 0.5);
+		assertEquals(Collections.<String> emptyList(), index.query(new MapGeometry(location, SpatialReference.create(3857)), 0));
+		assertEquals(Arrays.asList("a"), index.query(new MapGeometry(location, SpatialReference.create(4326)), 0));
+	}
+
+	@Test
+	public void testNearestFirstAndListedOnce()
+	{
+		index.update("p1", "far", point(9, 9), areas(square(0, 0, 10)), ONE_BREAK, 0);
+		index.update("p1", "near", point(2, 2), areas(square(0, 0, 10)), ONE_BREAK, 0);
+		// the same track published by another processor, farther away than its first entry
+		index.update("p2", "near", point(8, 8), areas(square(0, 0, 10)), ONE_BREAK, 0);
+
+		assertEquals(Arrays.asList("near", "far"), index.query(point(1, 1), 0));
+		ReachIndex.release(ReachIndex.acquire(index.getName()), "p2");
+	}
+
+	@Test
+	public void testReleaseRemovesTheOwnersTracks()
+	{
+		ReachIndex other = ReachIndex.acquire(index.getName());
+		assertSame(index, other);
+		index.update("p1", "a", point(0, 0), areas(square(0, 0, 1)), ONE_BREAK, 0);
+		other.update("p2", "b", point(0, 0), areas(square(0, 0, 1)), ONE_BREAK, 0);
+		assertEquals(2, index.size());
+
+		ReachIndex.release(other, "p2");
+		assertEquals(Arrays.asList("a"), index.query(point(0.5, 0.5), 0));
+		assertSame(index, ReachIndex.acquire(index.getName()));
+		ReachIndex.release(index, "p3");
+	}
+
+	private void assertMatchesBruteForce(double[][] squares, Random random)
+	{
+		for (int q = 0; q < 200; q++)
+		{
+			final double x = random.nextDouble() * 110, y = random.nextDouble() * 110;
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < squares.length; i++)
+			{
+				if (x > squares[i][0] && x < squares[i][0] + squares[i][2] && y > squares[i][1] && y < squares[i][1] + squares[i][2])
+					expected.add(i);
+			}
+			expected.sort(Comparator.comparingDouble(i -> (squares[i][0] - x) * (squares[i][0] - x) + (squares[i][1] - y) * (squares[i][1] - y)));
+			List<String> trackIds = new ArrayList<String>();
+			for (int i : expected)
+				trackIds.add("t" + i);
+			assertEquals("query at " + x + ", " + y, trackIds, index.query(point(x, y), 0));
+		}
+	}
+
+	private static MapGeometry point(double x, double y)
+	{
+		return new MapGeometry(new Point(x, y), SpatialReference.create(4326));
+	}
+
+	private static MapGeometry[] areas(MapGeometry... areas)
+	{
+		return areas;
+	}
+
+	private static MapGeometry square(double x, double y, double size)
+	{
+		Polygon polygon = new Polygon();
+		polygon.startPath(x, y);
+		polygon.lineTo(x, y + size);
+		polygon.lineTo(x + size, y + size);
+		polygon.lineTo(x + size, y);
+		return new MapGeometry(polygon, SpatialReference.create(4326));
+	}
+}
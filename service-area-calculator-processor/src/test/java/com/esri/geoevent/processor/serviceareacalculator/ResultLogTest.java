@@ -0,0 +1,274 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.SpatialReference;
+
+public class ResultLogTest
+{
+	private File	directory;
+	private File	file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("resultlog").toFile();
+		file = new File(directory, "results.log");
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testRecordsAreReadBackInOrder() throws IOException
+	{
+		ResultLog log = open(file, "settings", new HashMap<String, Double>());
+		log.append("a", areas(1, 10));
+		log.append("b", areas(2, 10));
+		log.append("a", new MapGeometry[] { area(3, 10), null });
+		log.close();
+
+		List<ResultLog.Entry> entries = readAll(file);
+		assertEquals(3, entries.size());
+		assertEquals("a", entries.get(0).getKey());
+		assertEquals("b", entries.get(1).getKey());
+		assertEquals(3.0, minX(entries.get(2).getAreas()[0]), 1e-9);
+		assertNull(entries.get(2).getAreas()[1]);
+		assertEquals(4326, entries.get(0).getAreas()[0].getSpatialReference().getID());
+	}
+
+	@Test
+	public void testReopenReplaysTheLatestAreasOfEveryKey() throws IOException
+	{
+		ResultLog log = open(file, "settings", new HashMap<String, Double>());
+		log.append("a", areas(1, 10));
+		log.append("b", areas(2, 10));
+		log.append("a", areas(3, 10));
+		log.close();
+
+		Map<String, Double> replayed = new HashMap<String, Double>();
+		open(file, "settings", replayed).close();
+		assertEquals(2, replayed.size());
+		assertEquals(3.0, replayed.get("a"), 1e-9);
+		assertEquals(2.0, replayed.get("b"), 1e-9);
+	}
+
+	@Test
+	public void testLogWithOtherSettingsIsCopiedAsideAndStartedOver() throws IOException
+	{
+		ResultLog log = open(file, "settings", new HashMap<String, Double>());
+		log.append("a", areas(1, 10));
+		log.close();
+
+		Map<String, Double> replayed = new HashMap<String, Double>();
+		log = open(file, "other settings", replayed);
+		log.append("b", areas(2, 10));
+		log.close();
+		assertTrue(replayed.isEmpty());
+		assertTrue(new File(file.getPath() + ".old").exists());
+		List<ResultLog.Entry> entries = readAll(file);
+		assertEquals(1, entries.size());
+		assertEquals("b", entries.get(0).getKey());
+	}
+
+	@Test
+	public void testReadingStopsAtATornRecord() throws IOException
+	{
+		ResultLog log = open(file, "settings", new HashMap<String, Double>());
+		log.append("a", areas(1, 10));
+		log.append("b", areas(2, 10));
+		log.close();
+
+		// flip a byte in the body of the second record, as if a crash interrupted its write
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			long second = 8 + "settings".length();
+			raf.seek(second);
+			second += 8 + raf.readInt();
+			raf.seek(second + 20);
+			int value = raf.read();
+			raf.seek(second + 20);
+			raf.write(value ^ 0xFF);
+		}
+		List<ResultLog.Entry> entries = readAll(file);
+		assertEquals(1, entries.size());
+		assertEquals("a", entries.get(0).getKey());
+
+		// the next records are written over the torn one
+		log = open(file, "settings", new HashMap<String, Double>());
+		log.append("c", areas(3, 10));
+		log.close();
+		entries = readAll(file);
+		assertEquals(2, entries.size());
+		assertEquals("c", entries.get(1).getKey());
+	}
+
+	@Test
+	public void testCompactionKeepsTheLatestRecordOfEveryKey() throws IOException
+	{
+		ResultLog log = open(file, "settings", new HashMap<String, Double>());
+		int written = appendLarge(log, 200);
+		log.close();
+
+		assertTrue(readAll(file).size() < written);
+		assertFalse(new File(file.getPath() + ".compact").exists());
+		Map<String, Double> replayed = new HashMap<String, Double>();
+		open(file, "settings", replayed).close();
+		assertLatest(replayed, written);
+	}
+
+	@Test(timeout = 60000)
+	public void testFailedCompactionKeepsTheWriterRunning() throws IOException
+	{
+		Map<String, Double> ignored = new HashMap<String, Double>();
+		ResultLog log = new ResultLog(file, "settings", 1, 0)
+			{
+				@Override
+				void copyOver(File compacted, int size) throws IOException
+				{
+					throw new IOException("disk full");
+				}
+			};
+		log.open(entry -> ignored.put(entry.getKey(), minX(entry.getAreas()[0])));
+		int written = appendLarge(log, 200);
+		log.append("last", areas(-1, 10));
+		log.close();
+
+		// nothing was dropped and every record, including those after the failure, is still in the log
+		assertEquals(0, log.getDroppedCount());
+		assertEquals(written + 1, readAll(file).size());
+		assertTrue(new File(file.getPath() + ".compact").exists());
+
+		// the next start finishes the compaction from the side file
+		Map<String, Double> replayed = new HashMap<String, Double>();
+		open(file, "settings", replayed).close();
+		assertFalse(new File(file.getPath() + ".compact").exists());
+		assertEquals(5, replayed.size());
+	}
+
+	private static ResultLog open(File file, String fingerprint, Map<String, Double> replayed) throws IOException
+	{
+		ResultLog log = new ResultLog(file, fingerprint, 1, 0);
+		log.open(entry -> replayed.put(entry.getKey(), minX(entry.getAreas()[0])));
+		return log;
+	}
+
+	/**
+	 * Logs areas of about 30 kB each for five keys, waiting whenever the queue is full, and returns how many were logged.
+	 */
+	private static int appendLarge(ResultLog log, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			long dropped = log.getDroppedCount();
+			log.append("k" + (i % 5), areas(i, 2000));
+			if (log.getDroppedCount() > dropped)
+			{
+				i--;
+				sleep();
+			}
+		}
+		return count;
+	}
+
+	private static void assertLatest(Map<String, Double> replayed, int written)
+	{
+		assertEquals(5, replayed.size());
+		for (int k = 0; k < 5; k++)
+			assertEquals(written - 5 + k, replayed.get("k" + k), 1e-9);
+	}
+
+	private static List<ResultLog.Entry> readAll(File file) throws IOException
+	{
+		List<ResultLog.Entry> entries = new ArrayList<ResultLog.Entry>();
+		ResultLog.read(file, entries::add);
+		return entries;
+	}
+
+	private static MapGeometry[] areas(double x, int pointCount)
+	{
+		return new MapGeometry[] { area(x, pointCount), area(x, pointCount) };
+	}
+
+	/**
+	 * A polygon whose smallest x is <code>x</code>, so that records can be told apart.
+	 */
+	private static MapGeometry area(double x, int pointCount)
+	{
+		Polygon polygon = new Polygon();
+		polygon.startPath(x, 0);
+		for (int i = 1; i < pointCount; i++)
+		{
+			double angle = Math.PI * i / pointCount;
+			polygon.lineTo(x + 1 - Math.cos(angle), Math.sin(angle));
+		}
+		return new MapGeometry(polygon, SpatialReference.create(4326));
+	}
+
+	private static double minX(MapGeometry area)
+	{
+		Envelope2D envelope = new Envelope2D();
+		area.getGeometry().queryEnvelope2D(envelope);
+		return envelope.xmin;
+	}
+
+	private static void sleep()
+	{
+		try
+		{
+			Thread.sleep(1);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
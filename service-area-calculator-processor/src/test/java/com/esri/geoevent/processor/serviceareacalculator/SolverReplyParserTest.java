@@ -0,0 +1,142 @@
+/*
+  Copyright 1995-2015 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.serviceareacalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Polygon;
+
+public class SolverReplyParserTest
+{
+	private static final double[]	BREAKS	= { 5, 10 };
+
+	@Test
+	public void testPolygonsAreMatchedByFacilityAndBreak() throws IOException
+	{
+		// features arrive in any order; FacilityID numbers the facilities from 1
+		MapGeometry[][] areas = parse(reply(feature(2, 10, 20), feature(1, 5, 1), feature(3, 5, 30), feature(1, 10, 2), feature(2, 5, 10)), 3);
+
+		assertEquals(3, areas.length);
+		assertEquals(1.0, originX(areas[0][0]), 0);
+		assertEquals(2.0, originX(areas[0][1]), 0);
+		assertEquals(10.0, originX(areas[1][0]), 0);
+		assertEquals(20.0, originX(areas[1][1]), 0);
+		assertEquals(30.0, originX(areas[2][0]), 0);
+		assertNull(areas[2][1]);
+		assertEquals(4326, areas[0][0].getSpatialReference().getID());
+	}
+
+	@Test
+	public void testPolygonWithoutFacilityIdIsSkipped() throws IOException
+	{
+		String unassigned = "{\"attributes\":{\"ToBreak\":5},\"geometry\":" + rings(99) + "}";
+		MapGeometry[][] areas = parse(reply(unassigned, feature(2, 5, 10)), 2);
+
+		assertNull(areas[0][0]);
+		assertEquals(10.0, originX(areas[1][0]), 0);
+	}
+
+	@Test
+	public void testPolygonsOfUnknownFacilitiesAndBreaksAreSkipped() throws IOException
+	{
+		String nullFacility = "{\"attributes\":{\"FacilityID\":null,\"ToBreak\":5},\"geometry\":" + rings(97) + "}";
+		String noBreak = "{\"attributes\":{\"FacilityID\":1},\"geometry\":" + rings(96) + "}";
+		MapGeometry[][] areas = parse(reply(feature(0, 5, 99), feature(3, 5, 98), feature(1, 7, 97), nullFacility, noBreak), 2);
+
+		for (MapGeometry[] facilityAreas : areas)
+		{
+			for (MapGeometry area : facilityAreas)
+				assertNull(area);
+		}
+	}
+
+	@Test
+	public void testClosingVertexIsNotRepeated() throws IOException
+	{
+		MapGeometry[][] areas = parse(reply(feature(1, 5, 0)), 1);
+		assertEquals(4, ((Polygon) areas[0][0].getGeometry()).getPointCount());
+	}
+
+	@Test
+	public void testReplyWithoutPolygonsReturnsNull() throws IOException
+	{
+		assertNull(parse("{\"messages\":[],\"facilities\":{\"features\":[]}}", 1));
+	}
+
+	@Test
+	public void testErrorReplyThrows() throws IOException
+	{
+		try
+		{
+			parse("{\"error\":{\"code\":498,\"message\":\"Invalid token.\",\"details\":[]}}", 1);
+			fail("expected a SolverErrorException");
+		}
+		catch (SolverErrorException e)
+		{
+			assertEquals(498, e.getCode());
+			assertTrue(e.isTokenError());
+			assertNotNull(e.getMessage());
+		}
+	}
+
+	private static MapGeometry[][] parse(String reply, int facilityCount) throws IOException
+	{
+		return SolverReplyParser.parse(new ByteArrayInputStream(reply.getBytes(StandardCharsets.UTF_8)), facilityCount, BREAKS);
+	}
+
+	private static String reply(String... features)
+	{
+		return "{\"saPolygons\":{\"spatialReference\":{\"wkid\":4326,\"latestWkid\":4326},\"features\":[" + String.join(",", features) + "]},\"messages\":[]}";
+	}
+
+	private static String feature(int facilityId, double toBreak, double x)
+	{
+		return "{\"attributes\":{\"FacilityID\":" + facilityId + ",\"Name\":\"Location " + facilityId + "\",\"ToBreak\":" + toBreak + "},\"geometry\":" + rings(x) + "}";
+	}
+
+	/**
+	 * A closed square ring starting at (x, 0).
+	 */
+	private static String rings(double x)
+	{
+		return "{\"rings\":[[[" + x + ",0],[" + x + ",1],[" + (x + 1) + ",1],[" + (x + 1) + ",0],[" + x + ",0]]]}";
+	}
+
+	private static double originX(MapGeometry area)
+	{
+		return ((Polygon) area.getGeometry()).getPoint(0).getX();
+	}
+}